@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.service.DirectorService;
 
@@ -23,6 +24,14 @@ public class DirectorController {
         return directorService.getDirectors();
     }
 
+    @GetMapping("/suggest")
+    @ResponseStatus(HttpStatus.OK)
+    public List<Suggestion> suggestDirectors(@RequestParam String prefix,
+                                             @RequestParam(defaultValue = "10") Integer limit) {
+        log.debug("Запрос подсказок режиссеров по префиксу {}", prefix);
+        return directorService.suggestDirectors(prefix, limit);
+    }
+
     @GetMapping("/{directorId}")
     @ResponseStatus(HttpStatus.OK)
     public Director getDirectorById(@PathVariable Long directorId) {
@@ -1,28 +1,44 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportResult;
 import ru.yandex.practicum.filmorate.dto.FullFilm;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequestMapping("/films")
 @RequiredArgsConstructor
 public class FilmController {
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final MediaType NDJSON = MediaType.parseMediaType(NDJSON_VALUE);
+
     private final Logger log = LoggerFactory.getLogger(FilmController.class);
 
     private final FilmService filmService;
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping()
     @ResponseStatus(HttpStatus.OK)
@@ -40,9 +56,45 @@ public class FilmController {
 
     @GetMapping()
     @ResponseStatus(HttpStatus.OK)
-    public List<FilmDto> getAllFilms() {
-        log.debug("Запрос на получение списка всех фильмов");
-        return filmService.getAllFilms();
+    public ResponseEntity<List<FilmDto>> getAllFilms(@RequestParam(required = false) Long after,
+                                                     @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.debug("Запрос на получение списка всех фильмов");
+            return ResponseEntity.ok(filmService.getAllFilms());
+        }
+        log.debug("Запрос на получение страницы фильмов после id {} размером {}", after, limit);
+        int pageSize = Pages.limitOrDefault(limit);
+        return Pages.of(filmService.getFilmsPage(after, pageSize), pageSize, FilmDto::getId);
+    }
+
+    @GetMapping(value = "/export", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        log.debug("Запрос на выгрузку каталога фильмов в формате NDJSON");
+        StreamingResponseBody body = out -> {
+            try {
+                filmService.exportFilms(film -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(film));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public FilmImportResult importFilms(InputStream body) throws IOException {
+        log.debug("Запрос на импорт фильмов в формате NDJSON");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return filmService.importFilms(reader);
+        }
     }
 
     @GetMapping("/{filmId}")
@@ -56,19 +108,31 @@ public class FilmController {
     @ResponseStatus(HttpStatus.OK)
     public List<FilmDto> getFilmsByNameOrDirector(
             @RequestParam(required = false) String query,
-            @RequestParam List<String> by
+            @RequestParam List<String> by,
+            @RequestParam(defaultValue = "0") Integer offset,
+            @RequestParam(required = false) Integer limit
     ) {
-        log.debug("Запрос на поиск фильмов с параметрами: {}, {}", query, by);
-        List<FilmDto> films = filmService.getFilmsByNameOrDirector(query, by);
+        log.debug("Запрос на поиск фильмов с параметрами: {}, {}, смещение {}, размер {}", query, by, offset, limit);
+        List<FilmDto> films = filmService.getFilmsByNameOrDirector(query, by, offset, limit);
         log.debug("Вернули список фильмов: {}", films);
         return films;
     }
 
+    @GetMapping("/suggest")
+    @ResponseStatus(HttpStatus.OK)
+    public List<Suggestion> suggestFilms(@RequestParam String prefix,
+                                         @RequestParam(defaultValue = "10") Integer limit) {
+        log.debug("Запрос подсказок фильмов по префиксу {}", prefix);
+        return filmService.suggestFilms(prefix, limit);
+    }
+
     @GetMapping("/common")
     @ResponseStatus(HttpStatus.OK)
-    public List<FilmDto> getCommonFilms(@RequestParam Long userId, @RequestParam Long friendId) {
+    public List<FilmDto> getCommonFilms(@RequestParam Long userId, @RequestParam Long friendId,
+                                        @RequestParam(defaultValue = "0") Integer offset,
+                                        @RequestParam(required = false) Integer limit) {
         log.info("Запрос на получение общих фильмов между пользователем с id {} и другом с id {}", userId, friendId);
-        return filmService.getCommonFilms(userId, friendId);
+        return filmService.getCommonFilms(userId, friendId, offset, limit);
     }
 
 
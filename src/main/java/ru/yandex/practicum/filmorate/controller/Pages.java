@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+final class Pages {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_LIMIT = 100;
+
+    private Pages() {
+    }
+
+    static int limitOrDefault(Integer limit) {
+        return limit == null ? DEFAULT_LIMIT : limit;
+    }
+
+    // Курсор следующей страницы отдаем в заголовке, тело остается обычным списком
+    static <T> ResponseEntity<List<T>> of(List<T> items, int limit, Function<T, Long> cursor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!items.isEmpty() && items.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(cursor.apply(items.get(items.size() - 1))));
+        }
+        return response.body(items);
+    }
+}
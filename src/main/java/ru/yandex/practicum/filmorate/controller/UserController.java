@@ -4,6 +4,7 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
@@ -41,9 +42,15 @@ public class UserController {
 
     @GetMapping()
     @ResponseStatus(HttpStatus.OK)
-    public List<User> getAllUsers() {
-        log.debug("Запрос на получение списка всех пользователей");
-        return userService.getAllUsers();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) Long after,
+                                                  @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.debug("Запрос на получение списка всех пользователей");
+            return ResponseEntity.ok(userService.getAllUsers());
+        }
+        log.debug("Запрос на получение страницы пользователей после id {} размером {}", after, limit);
+        int pageSize = Pages.limitOrDefault(limit);
+        return Pages.of(userService.getUsersPage(after, pageSize), pageSize, User::getId);
     }
 
     @GetMapping("/{id}")
@@ -78,6 +85,27 @@ public class UserController {
         return userService.getAllFriends(userId);
     }
 
+    // Неподтвержденные заявки в друзья: входящие (кто добавил пользователя) или исходящие, страницами по id
+    @GetMapping("/{userId}/friends/requests")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<User>> getFriendRequests(@PathVariable Long userId,
+                                                        @RequestParam(defaultValue = "incoming") String direction,
+                                                        @RequestParam(required = false) Long after,
+                                                        @RequestParam(required = false) Integer limit) {
+        log.info("Запрос заявок в друзья {} пользователя с userId {} после id {}", direction, userId, after);
+        int pageSize = Pages.limitOrDefault(limit);
+        return Pages.of(userService.getFriendRequests(userId, direction, after, pageSize), pageSize, User::getId);
+    }
+
+    // Друзья друзей, с которыми больше всего общих друзей
+    @GetMapping("/{userId}/friends/suggestions")
+    @ResponseStatus(HttpStatus.OK)
+    public List<User> getFriendSuggestions(@PathVariable Long userId,
+                                           @RequestParam(defaultValue = "10") Integer limit) {
+        log.info("Запрос предложений друзей для пользователя с userId {}", userId);
+        return userService.getFriendSuggestions(userId, limit);
+    }
+
     @GetMapping("/{userId}/friends/common/{otherUserId}")
     @ResponseStatus(HttpStatus.OK)
     public List<User> getCommonFriends(@PathVariable Long userId, @PathVariable Long otherUserId) {
@@ -93,10 +121,34 @@ public class UserController {
         return filmService.getRecommendation(userId);
     }
 
+    // Без before и limit лента отдается целиком по возрастанию, иначе страницами от новых событий к старым.
+    // from и to — время в миллисекундах, как в поле timestamp события; from включительно, to не включительно
     @GetMapping("/{userId}/feed")
     @ResponseStatus(HttpStatus.OK)
-    public List<Event> getUserEvents(@PathVariable Long userId) {
-        return userService.getUserEvents(userId);
+    public ResponseEntity<List<Event>> getUserEvents(@PathVariable Long userId,
+                                                     @RequestParam(required = false) Long before,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     @RequestParam(required = false) Long from,
+                                                     @RequestParam(required = false) Long to) {
+        if (before == null && limit == null) {
+            log.debug("Запрос ленты пользователя {}", userId);
+            return ResponseEntity.ok(userService.getUserEvents(userId, from, to));
+        }
+        log.debug("Запрос страницы ленты пользователя {} до события {} размером {}", userId, before, limit);
+        int pageSize = Pages.limitOrDefault(limit);
+        return Pages.of(userService.getUserEventsPage(userId, before, from, to, pageSize), pageSize,
+                Event::getEventId);
+    }
+
+    // События друзей от новых к старым, страницами по курсору before
+    @GetMapping("/{userId}/timeline")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<Event>> getTimeline(@PathVariable Long userId,
+                                                   @RequestParam(required = false) Long before,
+                                                   @RequestParam(required = false) Integer limit) {
+        log.debug("Запрос ленты друзей пользователя {} до события {} размером {}", userId, before, limit);
+        int pageSize = Pages.limitOrDefault(limit);
+        return Pages.of(userService.getTimelinePage(userId, before, pageSize), pageSize, Event::getEventId);
     }
 
     @DeleteMapping("/{userId}")
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FilmImportResult {
+    private long imported;
+    private long failed;
+    private List<FilmImportError> errors = new ArrayList<>();
+
+    public void addError(long line, String error) {
+        failed++;
+        errors.add(new FilmImportError(line, error));
+    }
+}
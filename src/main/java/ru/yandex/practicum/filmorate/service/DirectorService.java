@@ -2,10 +2,12 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
 import ru.yandex.practicum.filmorate.exception.DirectorMustHaveNameException;
 import ru.yandex.practicum.filmorate.exception.DirectorNotExistException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.SuggestIndex;
 
 import java.util.List;
 
@@ -13,6 +15,9 @@ import java.util.List;
 @RequiredArgsConstructor
 public class DirectorService {
     private final DirectorDbStorage directorDbStorage;
+    private final SuggestIndex suggestIndex;
+
+    private static final int MAX_SUGGESTIONS = 50;
 
     public List<Director> getDirectors() {
         return directorDbStorage.getDirectors();
@@ -49,6 +54,13 @@ public class DirectorService {
         return directorDbStorage.updateDirector(director);
     }
 
+    public List<Suggestion> suggestDirectors(String prefix, int limit) {
+        if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new IllegalArgumentException("Количество подсказок должно быть от 1 до " + MAX_SUGGESTIONS);
+        }
+        return suggestIndex.suggestDirectors(prefix, limit);
+    }
+
     public List<Director> getDirectorsByFilmId(Long filmId) {
         return directorDbStorage.getDirectorsByFilmId(filmId);
     }
@@ -1,21 +1,37 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportResult;
 import ru.yandex.practicum.filmorate.dto.FullFilm;
 import ru.yandex.practicum.filmorate.dto.Genre;
 import ru.yandex.practicum.filmorate.dto.Mpa;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
 import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.DirectorFilmsIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeBitmapIndex;
+import ru.yandex.practicum.filmorate.storage.film.PopularFilmsIndex;
+import ru.yandex.practicum.filmorate.storage.film.SuggestIndex;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -28,6 +44,21 @@ public class FilmService {
     private final GenreService genreService;
     private final MpaService mpaService;
     private final DirectorService directorService;
+    private final PopularFilmsIndex popularFilmsIndex;
+    private final DirectorFilmsIndex directorFilmsIndex;
+    private final FilmSearchIndex filmSearchIndex;
+    private final SuggestIndex suggestIndex;
+    private final RecommendationService recommendationService;
+    private final LikeBitmapIndex likeBitmapIndex;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final Set<String> SEARCH_FIELDS = Set.of("title", "director");
+
+    @Value("${filmorate.import.chunk-size:1000}")
+    private int importChunkSize;
 
     private final LocalDate checkDate = LocalDate.of(1895, 12, 28);
     private static final DateTimeFormatter formater = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -49,10 +80,61 @@ public class FilmService {
         return mapToFilDto(filmStorage.update(newFilm));
     }
 
+    public FilmImportResult importFilms(BufferedReader reader) throws IOException {
+        Set<Integer> mpaIds = mpaService.getAllMpa().stream()
+                .map(Mpa::getId)
+                .collect(Collectors.toSet());
+        Set<Integer> genreIds = genreService.getAllGenre().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+        Set<Long> directorIds = directorService.getDirectors().stream()
+                .map(Director::getId)
+                .collect(Collectors.toSet());
+
+        FilmImportResult result = new FilmImportResult();
+        List<Film> chunk = new ArrayList<>(importChunkSize);
+        List<Long> chunkLines = new ArrayList<>(importChunkSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                chunk.add(parseImportedFilm(line, mpaIds, genreIds, directorIds));
+                chunkLines.add(lineNumber);
+            } catch (JsonProcessingException e) {
+                result.addError(lineNumber, "Некорректный JSON: " + e.getOriginalMessage());
+            } catch (RuntimeException e) {
+                result.addError(lineNumber, e.getMessage());
+            }
+            if (chunk.size() >= importChunkSize) {
+                saveImportChunk(chunk, chunkLines, result);
+            }
+        }
+        saveImportChunk(chunk, chunkLines, result);
+        log.info("Импорт фильмов завершен: загружено {}, с ошибками {}", result.getImported(), result.getFailed());
+        return result;
+    }
+
     public List<FilmDto> getAllFilms() {
         return filmStorage.getAllFilms().stream().map(FilmService::mapToFilDto).collect(Collectors.toList());
     }
 
+    public List<FilmDto> getFilmsPage(Long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return filmStorage.getFilmsPage(afterId, limit).stream()
+                .map(FilmService::mapToFilDto)
+                .collect(Collectors.toList());
+    }
+
+    public void exportFilms(Consumer<FilmDto> consumer) {
+        filmStorage.streamAllFilms(film -> consumer.accept(mapToFilDto(film)));
+    }
+
     public FilmDto getFilmById(Long filmID) {
         Film film = filmStorage.find(filmID)
                 .orElseThrow(() -> new FilmNotFoundException("Фильм с filmID:" + filmID + "не удалось найти :("));
@@ -67,21 +149,23 @@ public class FilmService {
             throw new FilmNotFoundException("Фильм с filmId: " + filmId + " не удалось найти :(");
         }
 
-        filmStorage.addLike(filmId, userId);
+        if (!likeBitmapIndex.hasLiked(filmId, userId)) {
+            filmStorage.addLike(filmId, userId);
+        }
     }
 
-    public List<FilmDto> getCommonFilms(Long userId, Long friendId) {
+    public List<FilmDto> getCommonFilms(Long userId, Long friendId, int offset, Integer limit) {
         if (!userService.contain(userId) || !userService.contain(friendId)) {
             throw new UserNotFoundException("Пользователь с одним из идентификаторов не найден");
         }
 
-        List<Film> userFilms = filmStorage.getFilmsByUserId(userId);
-        List<Film> friendFilms = filmStorage.getFilmsByUserId(friendId);
-
-        Set<Film> commonFilms = new HashSet<>(userFilms);
-        commonFilms.retainAll(friendFilms);
-
-        return commonFilms.stream()
+        if (offset < 0 || limit != null && (limit <= 0 || limit > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("Смещение не может быть отрицательным, а размер страницы должен быть от 1 до "
+                    + MAX_PAGE_SIZE);
+        }
+        List<Long> filmIds = likeBitmapIndex.getCommonFilms(userId, friendId, offset,
+                limit == null ? Integer.MAX_VALUE : limit);
+        return filmStorage.getFilmsByIds(filmIds).stream()
                 .map(FilmService::mapToFilDto)
                 .collect(Collectors.toList());
     }
@@ -94,47 +178,24 @@ public class FilmService {
             throw new FilmNotFoundException("Фильм с filmId: " + filmId + " не удалось найти :(");
         }
 
-        filmStorage.dislike(filmId, userId);
+        if (likeBitmapIndex.hasLiked(filmId, userId)) {
+            filmStorage.dislike(filmId, userId);
+        }
     }
 
     public FullFilm getFilmWithGenre(Long filmId) {
         FilmDto filmDto = mapToFilDto(filmStorage.find(filmId)
                 .orElseThrow(() -> new FilmNotFoundException("Фильма с таким filmId не существует")));
 
-        Mpa mpa = mpaService.getMpaById((long) filmDto.getMpa().getId());
-
-        List<Genre> genres = Collections.emptyList();
-        if (filmDto.getGenres() != null && !filmDto.getGenres().isEmpty()) {
-            Set<Long> genreIds = filmDto.getGenres().stream()
-                    .map(genre -> (long) genre.getId())
-                    .collect(Collectors.toSet());
-
-            List<Genre> genreList = genreService.getGenresByIds(genreIds);
-
-            Map<Integer, Genre> genreMap = genreList.stream()
-                    .collect(Collectors.toMap(Genre::getId, genre -> genre));
-
-            genres = filmDto.getGenres().stream()
-                    .map(x -> genreMap.get(x.getId()))
-                    .filter(Objects::nonNull)
-                    .toList();
-
-        }
-
-        List<Director> directors = Collections.emptyList();
-        if (filmDto.getDirectors() != null && !filmDto.getDirectors().isEmpty()) {
-            directors = directorService.getDirectorsByFilmId(filmId);
-        }
-
         return FullFilm.builder()
                 .id(filmDto.getId())
                 .name(filmDto.getName())
                 .description(filmDto.getDescription())
                 .duration(filmDto.getDuration())
-                .mpa(mpa)
+                .mpa(filmDto.getMpa())
                 .releaseDate(filmDto.getReleaseDate())
-                .genres(genres)
-                .directors(directors)
+                .genres(filmDto.getGenres())
+                .directors(filmDto.getDirectors())
                 .build();
     }
 
@@ -146,11 +207,68 @@ public class FilmService {
         if (userId == null || !userService.contain(userId)) {
             throw new UserNotFoundException("Пользователя не может быть с пустым filmId");
         }
-        return filmStorage.getRecommendations(userId).stream()
+        return filmStorage.getFilmsByIds(recommendationService.getRecommendedFilmIds(userId)).stream()
                 .map(FilmService::mapToFilDto)
                 .collect(Collectors.toList());
     }
 
+    private Film parseImportedFilm(String line, Set<Integer> mpaIds, Set<Integer> genreIds, Set<Long> directorIds)
+            throws JsonProcessingException {
+        FilmDto filmDto = objectMapper.readValue(line, FilmDto.class);
+        Set<ConstraintViolation<FilmDto>> violations = validator.validate(filmDto);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(v -> "В поле '" + v.getPropertyPath() + "' ошибка: " + v.getMessage())
+                    .collect(Collectors.joining(", ")));
+        }
+        Film film = mapToFilm(filmDto);
+        if (!mpaIds.contains(film.getMpa().getId())) {
+            throw new MpaNotExistException("Рейтинга с id = " + film.getMpa().getId() + " не существует");
+        }
+        if (film.getGenres() != null) {
+            film.getGenres().stream()
+                    .filter(genre -> !genreIds.contains(genre.getId()))
+                    .findFirst()
+                    .ifPresent(genre -> {
+                        throw new GenreNotExistException("Жанра с id = " + genre.getId() + " не существует");
+                    });
+        }
+        if (film.getDirectors() != null) {
+            film.getDirectors().stream()
+                    .filter(director -> !directorIds.contains(director.getId()))
+                    .findFirst()
+                    .ifPresent(director -> {
+                        throw new DirectorNotExistException("Директора с id " + director.getId() + " не существует.");
+                    });
+        }
+        return film;
+    }
+
+    private void saveImportChunk(List<Film> chunk, List<Long> chunkLines, FilmImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            filmStorage.saveAll(chunk);
+            result.setImported(result.getImported() + chunk.size());
+        } catch (DataAccessException e) {
+            // Пакет откатился целиком: сохраняем его по одному фильму, чтобы найти строки с ошибкой
+            log.warn("Не удалось сохранить пакет из {} фильмов, повтор по одному: {}", chunk.size(),
+                    e.getMostSpecificCause().getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    filmStorage.saveAll(List.of(chunk.get(i)));
+                    result.setImported(result.getImported() + 1);
+                } catch (DataAccessException rowError) {
+                    result.addError(chunkLines.get(i), "Ошибка сохранения: "
+                            + rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        chunk.clear();
+        chunkLines.clear();
+    }
+
     private Film mapToFilm(FilmDto filmDto) {
         LocalDate date = LocalDate.parse(filmDto.getReleaseDate(), formater);
         if (date.isBefore(checkDate)) {
@@ -216,55 +334,56 @@ public class FilmService {
         if (!directorService.existDirector(directorId)) {
             throw new DirectorNotExistException("Директор с id " + directorId + " не найден");
         }
+        List<Long> filmIds;
         if (sortBy.equals("year")) {
-            return filmStorage.getDirectorFilmSortByYear(directorId).stream()
-                    .map(FilmService::mapToFilDto)
-                    .collect(Collectors.toList());
+            filmIds = directorFilmsIndex.getFilmsSortedByYear(directorId);
         } else if (sortBy.equals("likes")) {
-            return filmStorage.getDirectorFilmSortByLikes(directorId).stream()
-                    .map(FilmService::mapToFilDto)
-                    .collect(Collectors.toList());
+            filmIds = directorFilmsIndex.getFilmsSortedByLikes(directorId);
         } else {
             throw new SortByNotCorrectException(
                     "Выберите сортировку или по году или по количеству лайков year,likes()"
             );
         }
+        return filmStorage.getFilmsByIds(filmIds).stream()
+                .map(FilmService::mapToFilDto)
+                .collect(Collectors.toList());
     }
 
     public List<FilmDto> getPopularFilms(Integer count, Integer genreId, Integer year) {
-        return filmStorage.getPopularFilms(count, genreId, year).stream()
+        if (count <= 0) {
+            throw new IllegalArgumentException("Количество фильмов должно быть положительным");
+        }
+        return filmStorage.getFilmsByIds(popularFilmsIndex.getTop(count, genreId, year)).stream()
                 .map(FilmService::mapToFilDto)
                 .collect(Collectors.toList());
     }
 
-    public List<FilmDto> getFilmsByNameOrDirector(String query, List<String> by) {
-        if (query == null || by == null || by.size() > 2) {
+    public List<FilmDto> getFilmsByNameOrDirector(String query, List<String> by, int offset, Integer limit) {
+        if (query == null || by == null || by.isEmpty() || by.size() > 2) {
             throw new IllegalArgumentException("Некорректные параметры поиска!");
         }
-        if (by.size() == 1) {
-            if (by.contains("title")) {
-                return filmStorage.getFilmsByName(query)
-                        .stream()
-                        .map(FilmService::mapToFilDto)
-                        .collect(Collectors.toList());
-            } else if (by.contains("director")) {
-                return filmStorage.getFilmsByDirector(query)
-                        .stream()
-                        .map(FilmService::mapToFilDto)
-                        .collect(Collectors.toList());
-            } else {
-                throw new IllegalArgumentException(
-                        "Некорректные параметры поиска! Ожидается одно из полей: title, director"
-                );
-            }
-        } else {
-            return filmStorage.getFilmsByNameAndDirector(query)
-                    .stream()
-                    .map(FilmService::mapToFilDto)
-                    .collect(Collectors.toList());
+        if (!SEARCH_FIELDS.containsAll(by)) {
+            throw new IllegalArgumentException(
+                    "Некорректные параметры поиска! Ожидается одно из полей: title, director"
+            );
+        }
+        if (offset < 0 || limit != null && (limit <= 0 || limit > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("Смещение не может быть отрицательным, а размер страницы должен быть от 1 до "
+                    + MAX_PAGE_SIZE);
         }
+        List<Long> filmIds = filmSearchIndex.search(query, by.contains("title"), by.contains("director"),
+                offset, limit == null ? Integer.MAX_VALUE : limit);
+        return filmStorage.getFilmsByIds(filmIds).stream()
+                .map(FilmService::mapToFilDto)
+                .collect(Collectors.toList());
     }
 
+    public List<Suggestion> suggestFilms(String prefix, int limit) {
+        if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new IllegalArgumentException("Количество подсказок должно быть от 1 до " + MAX_SUGGESTIONS);
+        }
+        return suggestIndex.suggestFilms(prefix, limit);
+    }
 
     public void deleteFilmById(Long filmId) {
         filmStorage.deleteFilmById(filmId);
@@ -4,32 +4,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.Genre;
 import ru.yandex.practicum.filmorate.exception.GenreNotExistException;
-import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCatalog;
 
 import java.util.List;
-import java.util.Set;
 
 @Service
 public class GenreService {
-    private final GenreStorage genreStorage;
+    private final ReferenceDataCatalog catalog;
 
     @Autowired
-    public GenreService(GenreStorage genreStorage) {
-        this.genreStorage = genreStorage;
+    public GenreService(ReferenceDataCatalog catalog) {
+        this.catalog = catalog;
     }
 
     public Genre getGenreById(Long genreId) {
         if (genreId == null) {
             throw new GenreNotExistException("Жанр не может бытьпустмы");
         }
-        return genreStorage.getGenreById(genreId);
+        return catalog.findGenre(genreId)
+                .orElseThrow(() -> new GenreNotExistException("Жанра с id = " + genreId + " не существует"));
     }
 
     public List<Genre> getAllGenre() {
-        return genreStorage.getAllGenre();
+        return catalog.getGenres();
     }
 
-    public List<Genre> getGenresByIds(Set<Long> genreIds) {
-        return genreStorage.getGenresById(genreIds);
+    public boolean existGenre(Long genreId) {
+        return catalog.genreExists(genreId);
     }
 }
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.DirectorFilmsIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularFilmsIndex;
+
+// Пересобирает films.like_count по таблице film_scope на случай расхождений, затем и индексы, упорядоченные по лайкам
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikeCountReconciliationJob {
+    private final FilmStorage filmStorage;
+    private final PopularFilmsIndex popularFilmsIndex;
+    private final DirectorFilmsIndex directorFilmsIndex;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.likes.reconcile-interval:PT1H}")
+    public void reconcile() {
+        int updated = filmStorage.reconcileLikeCounts();
+        if (updated > 0) {
+            log.warn("Счетчик лайков пересчитан у {} фильмов", updated);
+            popularFilmsIndex.rebuild();
+            directorFilmsIndex.rebuild();
+        } else {
+            log.debug("Счетчики лайков совпадают с таблицей оценок");
+        }
+    }
+}
@@ -4,28 +4,29 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.Mpa;
 import ru.yandex.practicum.filmorate.exception.MpaNotExistException;
-import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCatalog;
 
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class MpaService {
-    private final MpaStorage mpaStorage;
+    private final ReferenceDataCatalog catalog;
 
 
     public Mpa getMpaById(Long mpaId) {
         if (mpaId == null) {
             throw new MpaNotExistException("Рейтинг не может быть путсым");
         }
-        return mpaStorage.getMpaById(mpaId);
+        return catalog.findMpa(mpaId)
+                .orElseThrow(() -> new MpaNotExistException("Рейтинга с id = " + mpaId + " не существует"));
     }
 
     public List<Mpa> getAllMpa() {
-        return mpaStorage.getAllMpa();
+        return catalog.getRatings();
     }
 
     public Boolean existMpa(Integer mpaId) {
-        return mpaStorage.existMpa(mpaId);
+        return catalog.mpaExists(mpaId);
     }
 }
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Полный пересчет рекомендаций всех пользователей с лайками и частый догоняющий пересчет изменившихся
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecommendationRefreshJob {
+    private final RecommendationService recommendationService;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.recommendations.full-refresh-interval:PT1H}")
+    public synchronized void refreshAll() {
+        long start = System.currentTimeMillis();
+        int users = recommendationService.refreshAll();
+        log.info("Рекомендации пересчитаны для {} пользователей за {} мс", users, System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.stale-refresh-interval:PT1M}")
+    public synchronized void refreshStale() {
+        int users = recommendationService.refreshStale();
+        if (users > 0) {
+            log.debug("Пересчитаны рекомендации {} пользователей с новыми лайками", users);
+        }
+    }
+}
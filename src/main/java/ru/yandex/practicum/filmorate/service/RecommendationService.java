@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.RecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationStorage;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Рекомендации отдаются из таблицы user_recommendation; пересчитывает их только фоновая задача
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecommendationService {
+    private final RecommendationEngine recommendationEngine;
+    private final RecommendationStorage recommendationStorage;
+
+    @Value("${filmorate.recommendations.size:100}")
+    private int size;
+    @Value("${filmorate.recommendations.partition-size:256}")
+    private int partitionSize;
+    @Value("${filmorate.recommendations.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Только сохраненный результат: до первого пересчета фоном список пуст, запрос ничего не считает и не пишет
+    public List<Long> getRecommendedFilmIds(Long userId) {
+        return recommendationStorage.getRecommendedFilmIds(userId);
+    }
+
+    public int refreshAll() {
+        long[] userIds = recommendationEngine.getUsersWithLikes();
+        return pool.invoke(new RefreshTask(userIds, null, 0, userIds.length));
+    }
+
+    public int refreshStale() {
+        Map<Long, Long> stale = recommendationEngine.getStaleUsers();
+        long[] userIds = stale.keySet().stream().mapToLong(Long::longValue).toArray();
+        return pool.invoke(new RefreshTask(userIds, stale, 0, userIds.length));
+    }
+
+    // Делит пользователей на части по partitionSize; каждая часть считается и сохраняется своей транзакцией
+    private class RefreshTask extends RecursiveTask<Integer> {
+        private final long[] userIds;
+        private final Map<Long, Long> changedAt;
+        private final int from;
+        private final int to;
+
+        private RefreshTask(long[] userIds, Map<Long, Long> changedAt, int from, int to) {
+            this.userIds = userIds;
+            this.changedAt = changedAt;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from > partitionSize) {
+                int middle = (from + to) >>> 1;
+                RefreshTask left = new RefreshTask(userIds, changedAt, from, middle);
+                left.fork();
+                int right = new RefreshTask(userIds, changedAt, middle, to).compute();
+                return left.join() + right;
+            }
+            Map<Long, List<Long>> filmIdsByUser = new HashMap<>();
+            Map<Long, Long> versions = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                long userId = userIds[i];
+                versions.put(userId, changedAt == null ? recommendationEngine.getLikesChangedAt(userId)
+                        : changedAt.get(userId));
+                filmIdsByUser.put(userId, recommendationEngine.recommend(userId, size));
+            }
+            try {
+                recommendationStorage.saveRecommendations(filmIdsByUser, Instant.now());
+            } catch (DataAccessException e) {
+                log.warn("Не удалось сохранить рекомендации для {} пользователей", filmIdsByUser.size(), e);
+                return 0;
+            }
+            versions.forEach(recommendationEngine::markComputed);
+            return filmIdsByUser.size();
+        }
+    }
+}
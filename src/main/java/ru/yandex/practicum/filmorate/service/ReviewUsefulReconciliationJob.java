@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+
+// Пересчитывает review.useful по таблице review_score на случай расхождений; первый запуск — сразу при старте
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReviewUsefulReconciliationJob {
+    private final ReviewStorage reviewStorage;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.reviews.reconcile-interval:PT1H}")
+    public void reconcile() {
+        int updated = reviewStorage.reconcileUseful();
+        if (updated > 0) {
+            log.warn("Полезность пересчитана у {} отзывов", updated);
+        } else {
+            log.debug("Полезность отзывов совпадает с таблицей оценок");
+        }
+    }
+}
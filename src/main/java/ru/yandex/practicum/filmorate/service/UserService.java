@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.exception.DateNotExistException;
 import ru.yandex.practicum.filmorate.exception.FriendsException;
@@ -15,25 +16,31 @@ import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.event.EventPublisher;
 import ru.yandex.practicum.filmorate.storage.event.EventStorage;
+import ru.yandex.practicum.filmorate.storage.event.TimelineStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
     private final Logger log = LoggerFactory.getLogger(UserService.class);
     private final DateTimeFormatter formater = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int MAX_PAGE_SIZE = 1000;
 
 
     private final UserStorage userStorage;
     private final EventStorage eventStorage;
+    private final EventPublisher eventPublisher;
+    private final TimelineStorage timelineStorage;
+    private final FilmStorage filmStorage;
+    private final ReviewStorage reviewStorage;
 
     public User createUser(UserDto userDto) {
         return userStorage.save(mapToUser(userDto));
@@ -47,9 +54,6 @@ public class UserService {
             log.warn("Ошибка при обновлении пользователя: {}", errorMessage);
             throw new UserNotFoundException(errorMessage);
         }
-        User oldUser = userStorage.find(userDto.getId()).orElseThrow(() -> new UserNotFoundException(
-                "Пользователь с id: " + id + " не найден."
-        ));
         User newUser = mapToUser(userDto);
         return userStorage.update(newUser);
     }
@@ -59,6 +63,13 @@ public class UserService {
         return userStorage.getAllUsers();
     }
 
+    public List<User> getUsersPage(Long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
     public User getUserById(Long id) {
         return userStorage.find(id)
                 .orElseThrow(() -> new UserNotFoundException("Пользователя с id:" + id + "не удалось найти :("));
@@ -68,62 +79,73 @@ public class UserService {
         if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
-        User user = userStorage.find(userId).orElseThrow(() -> new UserNotFoundException(
-                "Пользователь с id: " + userId + " не найден."
-        ));
-
         if (friendId == null || !userStorage.existById(friendId)) {
-            throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
+            throw new UserNotFoundException("Пользователя с id: " + friendId + " не удалось найти :(");
         }
-        User friend = userStorage.find(friendId).orElseThrow(() -> new UserNotFoundException(
-                "Пользователь с id: " + friendId + " не найден."
-        ));
-        if (friend.equals(user)) {
+        if (friendId.equals(userId)) {
             throw new FriendsException("Вы не можете добавить сами себя в друзья");
         }
         userStorage.addFriendById(userId, friendId);
+        timelineStorage.invalidate(userId);
+        timelineStorage.invalidate(friendId);
     }
 
     public void deleteFriendById(Long userId, Long friendId) {
         if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
-        User user = userStorage.find(userId).orElseThrow(() -> new UserNotFoundException(
-                "Пользователь с id: " + userId + " не найден."
-        ));
-
         if (friendId == null || !userStorage.existById(friendId)) {
-            throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
+            throw new UserNotFoundException("Пользователя с id: " + friendId + " не удалось найти :(");
         }
-        User friend = userStorage.find(friendId).orElseThrow(() -> new UserNotFoundException(
-                "Пользователь с id: " + userId + " не найден."
-        ));
         userStorage.deleteFriendById(userId, friendId);
+        timelineStorage.invalidate(userId);
+        timelineStorage.invalidate(friendId);
     }
 
     public List<User> getAllFriends(Long userId) {
-        if (userId == null || userStorage.find(userId).isEmpty()) {
+        if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
         return userStorage.getAllFriends(userId);
     }
 
-    public List<User> getCommonFriends(Long userId, Long otherUserId) {
-        if (userId == null || userStorage.find(userId).isEmpty()) {
+    public List<User> getFriendSuggestions(Long userId, int limit) {
+        if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return userStorage.getFriendSuggestions(userId, limit);
+    }
 
+    public List<User> getFriendRequests(Long userId, String direction, Long afterId, int limit) {
+        if (userId == null || !userStorage.existById(userId)) {
+            throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (direction.equals("incoming")) {
+            return userStorage.getIncomingFriendRequests(userId, afterId, limit);
+        } else if (direction.equals("outgoing")) {
+            return userStorage.getOutgoingFriendRequests(userId, afterId, limit);
+        }
+        throw new IllegalArgumentException("Выберите входящие или исходящие заявки incoming,outgoing");
+    }
 
-        if (otherUserId == null || userStorage.find(otherUserId).isEmpty()) {
+    public List<User> getCommonFriends(Long userId, Long otherUserId) {
+        if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
 
 
-        Set<User> userSetFriends = new HashSet<>(userStorage.getAllFriends(userId));
-        Set<User> otherUserSetFriends = new HashSet<>(userStorage.getAllFriends(otherUserId));
+        if (otherUserId == null || !userStorage.existById(otherUserId)) {
+            throw new UserNotFoundException("Пользователя с id: " + otherUserId + " не удалось найти :(");
+        }
+
 
-        return userSetFriends.stream()
-                .filter(otherUserSetFriends::contains).distinct().collect(Collectors.toList());
+        return userStorage.getCommonFriends(userId, otherUserId);
     }
 
 
@@ -170,18 +192,55 @@ public class UserService {
     }
 
     public void createEvent(Long userId, EventType eventType, Operation operation, Long entityId) {
-        eventStorage.saveEvent(userId, eventType, operation, entityId);
+        eventPublisher.publish(Event.builder()
+                .userId(userId)
+                .eventType(eventType)
+                .operation(operation)
+                .entityId(entityId)
+                .timestamp(System.currentTimeMillis())
+                .build());
+    }
+
+    public List<Event> getUserEvents(Long userId, Long from, Long to) {
+        validateFeedRequest(userId, from, to);
+        eventPublisher.awaitWritten(userId);
+        return eventStorage.getUserEvents(userId, from, to);
+    }
+
+    public List<Event> getUserEventsPage(Long userId, Long beforeId, Long from, Long to, int limit) {
+        validateFeedRequest(userId, from, to);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        eventPublisher.awaitWritten(userId);
+        return eventStorage.getUserEventsPage(userId, beforeId, from, to, limit);
     }
 
-    public List<Event> getUserEvents(Long userId) {
+    public List<Event> getTimelinePage(Long userId, Long beforeId, int limit) {
         if (userId == null || !userStorage.existById(userId)) {
             throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
         }
-        return eventStorage.getUserEvents(userId);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return timelineStorage.getTimelinePage(userId, beforeId, limit);
+    }
 
+    private void validateFeedRequest(Long userId, Long from, Long to) {
+        if (userId == null || !userStorage.existById(userId)) {
+            throw new UserNotFoundException("Пользователя с id: " + userId + " не удалось найти :(");
+        }
+        if (from != null && to != null && from > to) {
+            throw new IllegalArgumentException("Начало периода не может быть позже его конца");
+        }
     }
 
+    @Transactional
     public void deleteUserById(Long userId) {
+        filmStorage.deleteLikesByUserId(userId);
+        reviewStorage.revokeVotesByUser(userId);
+        reviewStorage.deleteByUser(userId);
         userStorage.deleteUserById(userId);
+        timelineStorage.invalidate(userId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.RoaringBitmap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Множества существующих id пользователей, фильмов и отзывов: проверки существования без запросов к БД
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EntityIds {
+    private final JdbcTemplate jdbc;
+
+    private static final String LOAD_USER_IDS_QUERY = "SELECT user_id FROM users";
+    private static final String LOAD_FILM_IDS_QUERY = "SELECT film_id FROM films";
+    private static final String LOAD_REVIEW_IDS_QUERY = "SELECT review_id FROM review";
+
+    private final IdSet users = new IdSet();
+    private final IdSet films = new IdSet();
+    private final IdSet reviews = new IdSet();
+
+    @PostConstruct
+    public void rebuild() {
+        users.load(LOAD_USER_IDS_QUERY);
+        films.load(LOAD_FILM_IDS_QUERY);
+        reviews.load(LOAD_REVIEW_IDS_QUERY);
+        log.info("Множества id загружены: {} пользователей, {} фильмов, {} отзывов", users.size(), films.size(),
+                reviews.size());
+    }
+
+    public IdSet users() {
+        return users;
+    }
+
+    public IdSet films() {
+        return films;
+    }
+
+    public IdSet reviews() {
+        return reviews;
+    }
+
+    // Изменения внутри транзакции применяются после коммита, чтобы откат не оставил в множестве лишних id
+    public class IdSet {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private RoaringBitmap ids = new RoaringBitmap();
+
+        public boolean contains(Long id) {
+            if (id == null) {
+                return false;
+            }
+            lock.readLock().lock();
+            try {
+                return ids.contains(id);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public void add(long id) {
+            addAll(List.of(id));
+        }
+
+        public void addAll(Collection<Long> added) {
+            if (added.isEmpty()) {
+                return;
+            }
+            AfterCommit.run(() -> {
+                lock.writeLock().lock();
+                try {
+                    added.forEach(ids::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+
+        public void remove(long id) {
+            removeAll(List.of(id));
+        }
+
+        public void removeAll(Collection<Long> removed) {
+            if (removed.isEmpty()) {
+                return;
+            }
+            AfterCommit.run(() -> {
+                lock.writeLock().lock();
+                try {
+                    removed.forEach(ids::remove);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+
+        private long size() {
+            lock.readLock().lock();
+            try {
+                return ids.cardinality();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void load(String sql) {
+            RoaringBitmap loaded = new RoaringBitmap();
+            jdbc.query(sql, rs -> {
+                loaded.add(rs.getLong(1));
+            });
+            lock.writeLock().lock();
+            try {
+                ids = loaded;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Чтения, запомненные на время одного HTTP-запроса: повторный поиск той же сущности не идет в БД.
+// Вне запроса (планировщик, старт) значение просто загружается
+public final class RequestMemo {
+    private static final String ATTRIBUTE = RequestMemo.class.getName();
+
+    private RequestMemo() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String key, Supplier<T> loader) {
+        Map<String, Object> memo = memo();
+        if (memo == null) {
+            return loader.get();
+        }
+        if (memo.containsKey(key)) {
+            return (T) memo.get(key);
+        }
+        T value = loader.get();
+        memo.put(key, value);
+        return value;
+    }
+
+    public static void evict(String key) {
+        Map<String, Object> memo = memo();
+        if (memo != null) {
+            memo.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> memo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, Object> memo = (Map<String, Object>) attributes.getAttribute(ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new HashMap<>();
+            attributes.setAttribute(ATTRIBUTE, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return memo;
+    }
+}
@@ -7,17 +7,21 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorageListener;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 @RequiredArgsConstructor
 public class DirectorStorage implements DirectorDbStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<Director> rowMapper;
+    private final List<DirectorStorageListener> listeners;
 
     private static final String EXIST_BY_ID_QUERY = "SELECT COUNT(*) > 0 FROM director WHERE director_id = ?";
     private static final String FIND_ALL_QUERY = "SELECT * FROM director";
@@ -45,6 +49,7 @@ public class DirectorStorage implements DirectorDbStorage {
     @Override
     public Director updateDirector(Director director) {
         jdbc.update(UPDATE_QUERY, director.getName(), director.getId());
+        notifyListeners(listener -> listener.onDirectorSaved(director));
         return director;
     }
 
@@ -58,12 +63,14 @@ public class DirectorStorage implements DirectorDbStorage {
         }, keyHolder);
 
         director.setId(keyHolder.getKey().longValue());
+        notifyListeners(listener -> listener.onDirectorSaved(director));
         return director;
     }
 
     @Override
     public void deleteDirector(Long directorId) {
         jdbc.update(DELETE_QUERY, directorId);
+        notifyListeners(listener -> listener.onDirectorDeleted(directorId));
     }
 
     @Override
@@ -75,4 +82,8 @@ public class DirectorStorage implements DirectorDbStorage {
     public List<Director> getDirectorsByFilmId(Long filmId) {
         return jdbc.query(GET_DIRECTOR_BY_FILM_ID_QUERY, rowMapper, filmId);
     }
+
+    private void notifyListeners(Consumer<DirectorStorageListener> event) {
+        AfterCommit.run(() -> listeners.forEach(event));
+    }
 }
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.storage.director;
+
+import ru.yandex.practicum.filmorate.model.Director;
+
+// Уведомления об изменениях режиссеров, вызываются после фиксации транзакции
+public interface DirectorStorageListener {
+    default void onDirectorSaved(Director director) {
+    }
+
+    default void onDirectorDeleted(Long directorId) {
+    }
+}
@@ -0,0 +1,251 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Запись событий ленты вне запроса: ограниченная очередь и один поток-писатель, который вставляет события пачками.
+// Порядок событий сохраняется, потому что очередь одна и писатель один
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventPublisher {
+    private final EventStorage eventStorage;
+    private final TimelineStorage timelineStorage;
+
+    // SYNC — запись в потоке запроса, ASYNC — запрос не ждет записи, GROUP_COMMIT — запрос ждет коммита своей пачки
+    public enum Durability {
+        SYNC, ASYNC, GROUP_COMMIT
+    }
+
+    @Value("${filmorate.events.durability:ASYNC}")
+    private Durability durability;
+    @Value("${filmorate.events.queue-capacity:10000}")
+    private int queueCapacity;
+    @Value("${filmorate.events.batch-size:500}")
+    private int batchSize;
+    @Value("${filmorate.events.read-wait-ms:2000}")
+    private long readWaitMs;
+    @Value("${filmorate.events.publish-wait-ms:2000}")
+    private long publishWaitMs;
+
+    private BlockingQueue<PendingEvent> queue;
+    private Thread writer;
+    private volatile boolean running;
+    // Номер события и место в очереди выдаются под одной блокировкой, чтобы порядок номеров совпадал с порядком записи
+    private final Lock publishLock = new ReentrantLock();
+    private long sequence;
+    // Номер последнего поставленного в очередь события пользователя, пока оно не записано
+    private final Map<Long, Long> lastQueuedByUser = new ConcurrentHashMap<>();
+    private final Object written = new Object();
+    private volatile long writtenUpTo;
+
+    @PostConstruct
+    public void start() {
+        if (durability == Durability.SYNC) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::writeLoop, "event-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Запись событий ленты в режиме {}, очередь на {} событий", durability, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        publishLock.lock();
+        try {
+            running = false;
+        } finally {
+            publishLock.unlock();
+        }
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    // Событие публикуется после коммита изменения, поэтому ошибка публикации не должна валить запрос:
+    // такое событие пишется в лог и отбрасывается. Запрос ждет места в очереди и, в режиме GROUP_COMMIT,
+    // коммита своей пачки не дольше publishWaitMs
+    public void publish(Event event) {
+        if (queue == null) {
+            saveOrDrop(event);
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publishWaitMs);
+        CompletableFuture<Void> done = durability == Durability.GROUP_COMMIT ? new CompletableFuture<>() : null;
+        try {
+            if (!publishLock.tryLock(publishWaitMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Очередь событий ленты переполнена, событие {} отброшено", event);
+                return;
+            }
+            try {
+                if (!running) {
+                    saveOrDrop(event);
+                    return;
+                }
+                long seq = sequence + 1;
+                Long previous = lastQueuedByUser.put(event.getUserId(), seq);
+                // Очередь полна — запрос ждет места: так писатель задает темп, а порядок событий не нарушается
+                if (!queue.offer(new PendingEvent(seq, event, done), remaining(deadline), TimeUnit.NANOSECONDS)) {
+                    if (previous == null) {
+                        lastQueuedByUser.remove(event.getUserId(), seq);
+                    } else {
+                        lastQueuedByUser.replace(event.getUserId(), seq, previous);
+                    }
+                    log.warn("Очередь событий ленты переполнена, событие {} отброшено", event);
+                    return;
+                }
+                sequence = seq;
+            } finally {
+                publishLock.unlock();
+            }
+            if (done != null) {
+                done.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Публикация события {} прервана", event);
+        } catch (TimeoutException e) {
+            // Событие осталось в очереди и будет записано, но запрос не ждет дольше отведенного
+            log.warn("Запись события {} не подтверждена за {} мс", event, publishWaitMs);
+        } catch (ExecutionException e) {
+            log.warn("Событие {} не записано: {}", event, e.getCause().getMessage());
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    // Лента читается после записи всех уже опубликованных событий пользователя
+    public void awaitWritten(Long userId) {
+        Long target = lastQueuedByUser.get(userId);
+        if (target == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + readWaitMs;
+        synchronized (written) {
+            while (writtenUpTo < target) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    log.warn("События пользователя {} еще не записаны, лента может быть неполной", userId);
+                    return;
+                }
+                try {
+                    written.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка записи событий ленты", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        log.info("Очередь событий ленты записана, поток остановлен");
+    }
+
+    private void write(List<PendingEvent> batch) {
+        List<Event> saved = new ArrayList<>(batch.size());
+        try {
+            eventStorage.saveEvents(batch.stream().map(PendingEvent::event).toList());
+            for (PendingEvent pending : batch) {
+                saved.add(pending.event());
+                pending.complete();
+            }
+        } catch (DataAccessException e) {
+            // Например, пользователь удален, пока событие ждало записи: пишем по одному, пропуская такие
+            log.warn("Пачка событий не записана целиком, повтор по одному: {}", e.getMessage());
+            for (PendingEvent pending : batch) {
+                try {
+                    eventStorage.saveEvents(List.of(pending.event()));
+                    saved.add(pending.event());
+                    pending.complete();
+                } catch (DataAccessException rowError) {
+                    log.warn("Событие {} не записано: {}", pending.event(), rowError.getMessage());
+                    pending.fail(rowError);
+                }
+            }
+        } finally {
+            for (PendingEvent pending : batch) {
+                lastQueuedByUser.remove(pending.event().getUserId(), pending.seq());
+                // Не завершенные выше события не записаны из-за непредвиденной ошибки
+                pending.fail(new IllegalStateException("Событие " + pending.event() + " не записано"));
+            }
+            synchronized (written) {
+                writtenUpTo = batch.get(batch.size() - 1).seq();
+                written.notifyAll();
+            }
+        }
+        timelineStorage.fanOut(saved);
+    }
+
+    private void saveOrDrop(Event event) {
+        try {
+            save(List.of(event));
+        } catch (DataAccessException e) {
+            log.warn("Событие {} не записано: {}", event, e.getMessage());
+        }
+    }
+
+    private void save(List<Event> events) {
+        eventStorage.saveEvents(events);
+        timelineStorage.fanOut(events);
+    }
+
+    // done есть только в режиме GROUP_COMMIT; повторное завершение ничего не меняет
+    private record PendingEvent(long seq, Event event, CompletableFuture<Void> done) {
+        void complete() {
+            if (done != null) {
+                done.complete(null);
+            }
+        }
+
+        void fail(Throwable error) {
+            if (done != null) {
+                done.completeExceptionally(error);
+            }
+        }
+    }
+}
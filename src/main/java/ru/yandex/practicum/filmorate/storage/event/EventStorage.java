@@ -1,14 +1,19 @@
 package ru.yandex.practicum.filmorate.storage.event;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Event;
-import ru.yandex.practicum.filmorate.model.EventType;
-import ru.yandex.practicum.filmorate.model.Operation;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @RequiredArgsConstructor
@@ -16,14 +21,61 @@ public class EventStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<Event> rowMapper;
 
-    private static final String INSERT_EVENT_QUERY = "INSERT INTO user_event(user_id, event_type, operation, entity_id) VALUES (?, ?, ?, ?)";
-    private static final String GET_USER_EVENT_QUERY = "SELECT * FROM user_event WHERE user_id = ?";
+    private static final String INSERT_EVENT_QUERY =
+            "INSERT INTO user_event(user_id, event_type, operation, entity_id, time_stamp) VALUES (?, ?, ?, ?, ?)";
+    private static final String GET_USER_EVENT_QUERY = """
+            SELECT * FROM user_event
+            WHERE user_id = ? AND time_stamp >= ? AND time_stamp < ?
+            ORDER BY event_id
+            """;
+    // Страница ленты от новых событий к старым: идет по индексу (user_id, event_id) от курсора вниз
+    private static final String GET_USER_EVENTS_PAGE_QUERY = """
+            SELECT * FROM user_event
+            WHERE user_id = ? AND event_id < ? AND time_stamp >= ? AND time_stamp < ?
+            ORDER BY event_id DESC
+            LIMIT ?
+            """;
+    private static final Timestamp MIN_TIME = new Timestamp(0);
+    private static final Timestamp MAX_TIME = Timestamp.valueOf("9999-12-31 00:00:00");
 
-    public void saveEvent(Long userId, EventType eventType, Operation operation, Long entityId) {
-        jdbc.update(INSERT_EVENT_QUERY, userId, eventType.getTitle(), operation.getTitle(), entityId);
+    // Вставляет события пачкой и проставляет им сгенерированные id
+    @Transactional
+    public void saveEvents(List<Event> events) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_EVENT_QUERY, new String[]{"event_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Event event = events.get(i);
+                        ps.setLong(1, event.getUserId());
+                        ps.setString(2, event.getEventType().getTitle());
+                        ps.setString(3, event.getOperation().getTitle());
+                        ps.setLong(4, event.getEntityId());
+                        ps.setTimestamp(5, new Timestamp(event.getTimestamp()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                }, keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setEventId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    public List<Event> getUserEvents(Long userId, Long from, Long to) {
+        return jdbc.query(GET_USER_EVENT_QUERY, rowMapper, userId, toTimestamp(from, MIN_TIME),
+                toTimestamp(to, MAX_TIME));
+    }
+
+    public List<Event> getUserEventsPage(Long userId, Long beforeId, Long from, Long to, int limit) {
+        return jdbc.query(GET_USER_EVENTS_PAGE_QUERY, rowMapper, userId, beforeId == null ? Long.MAX_VALUE : beforeId,
+                toTimestamp(from, MIN_TIME), toTimestamp(to, MAX_TIME), limit);
     }
 
-    public List<Event> getUserEvents(Long userId) {
-        return jdbc.query(GET_USER_EVENT_QUERY, rowMapper, userId);
+    private static Timestamp toTimestamp(Long millis, Timestamp defaultValue) {
+        return millis == null ? defaultValue : new Timestamp(millis);
     }
 }
\ No newline at end of file
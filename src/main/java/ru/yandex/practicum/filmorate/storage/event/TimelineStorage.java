@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EntityIds;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// Лента событий друзей. Записанные события раскладываются по ограниченным лентам подписчиков (fan-out on write);
+// ленты держатся в памяти только для читающих пользователей. События авторов с очень большим числом подписчиков
+// не раскладываются, а подмешиваются при чтении из user_event
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TimelineStorage {
+    private final JdbcTemplate jdbc;
+    private final RowMapper<Event> rowMapper;
+    private final EntityIds entityIds;
+    private final FriendGraph friendGraph;
+
+    private static final String GET_TIMELINE_PAGE_QUERY = """
+            SELECT * FROM user_event
+            WHERE user_id IN (SELECT friend_id FROM friends WHERE user_id = ?)
+            AND event_id < ?
+            ORDER BY event_id DESC
+            LIMIT ?
+            """;
+    private static final String GET_AUTHORS_EVENTS_PAGE_QUERY = """
+            SELECT * FROM user_event
+            WHERE user_id IN (%s) AND event_id < ?
+            ORDER BY event_id DESC
+            LIMIT ?
+            """;
+
+    @Value("${filmorate.timeline.capacity:200}")
+    private int capacity;
+    @Value("${filmorate.timeline.max-users:10000}")
+    private int maxUsers;
+    @Value("${filmorate.timeline.fan-out-limit:1000}")
+    private int fanOutLimit;
+
+    private Map<Long, Timeline> timelines;
+    // Авторы, чьи события не раскладываются по лентам; до перезапуска автор из множества не выходит,
+    // иначе пропущенные за это время события пропали бы из уже загруженных лент
+    private final Set<Long> heavyAuthors = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        // Дольше всех не использованные ленты вытесняются, при следующем чтении лента загружается из БД заново
+        timelines = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Timeline> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+
+    // Вызывается после коммита событий: дописывает их в загруженные ленты подписчиков
+    public void fanOut(List<Event> events) {
+        if (events.isEmpty() || timelines.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Event>> byAuthor = events.stream()
+                .collect(Collectors.groupingBy(Event::getUserId, LinkedHashMap::new, Collectors.toList()));
+        byAuthor.forEach((authorId, authored) -> {
+            if (heavyAuthors.contains(authorId)) {
+                return;
+            }
+            // Подписчики автора — пользователи, у которых он в друзьях
+            long[] followers = friendGraph.followerIds(authorId);
+            if (followers.length > fanOutLimit) {
+                heavyAuthors.add(authorId);
+                log.info("У пользователя {} {} подписчиков, его события читаются при запросе ленты", authorId,
+                        followers.length);
+                return;
+            }
+            for (long followerId : followers) {
+                Timeline timeline = timelines.get(followerId);
+                if (timeline != null) {
+                    timeline.addAll(authored, capacity);
+                }
+            }
+        });
+    }
+
+    public List<Event> getTimelinePage(Long userId, Long beforeId, int limit) {
+        long before = beforeId == null ? Long.MAX_VALUE : beforeId;
+        // События удаленных пользователей из БД удаляются каскадом, из лент в памяти — отсекаются до обрезки страницы
+        List<Event> page = timelineOf(userId).page(before, limit,
+                event -> entityIds.users().contains(event.getUserId()));
+        if (page == null) {
+            // В памяти нет нужного участка ленты: лента еще грузится или запрошены события старше ее начала
+            page = jdbc.query(GET_TIMELINE_PAGE_QUERY, rowMapper, userId, before, limit);
+        }
+        List<Long> heavyFriends = heavyFriends(userId);
+        if (!heavyFriends.isEmpty()) {
+            page = merge(page, authorsEventsPage(heavyFriends, before, limit), limit);
+        }
+        return page;
+    }
+
+    // Список друзей пользователя изменился или он удален: лента будет собрана заново
+    public void invalidate(Long userId) {
+        timelines.remove(userId);
+    }
+
+    private Timeline timelineOf(Long userId) {
+        Timeline created = new Timeline();
+        Timeline existing = timelines.putIfAbsent(userId, created);
+        if (existing != null) {
+            return existing;
+        }
+        // Лента регистрируется до чтения из БД: события, записанные после чтения, попадут в нее через fanOut
+        List<Event> recent = jdbc.query(GET_TIMELINE_PAGE_QUERY, rowMapper, userId, Long.MAX_VALUE, capacity);
+        created.load(recent, recent.size() < capacity, capacity);
+        return created;
+    }
+
+    private List<Long> heavyFriends(Long userId) {
+        if (heavyAuthors.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(friendGraph.friendIds(userId))
+                .filter(heavyAuthors::contains)
+                .boxed()
+                .toList();
+    }
+
+    private List<Event> authorsEventsPage(List<Long> authorIds, long before, int limit) {
+        String inSql = authorIds.stream()
+                .map(id -> "?")
+                .collect(Collectors.joining(", "));
+        List<Object> params = new ArrayList<>(authorIds);
+        params.add(before);
+        params.add(limit);
+        return jdbc.query(String.format(GET_AUTHORS_EVENTS_PAGE_QUERY, inSql), rowMapper, params.toArray());
+    }
+
+    private static List<Event> merge(List<Event> first, List<Event> second, int limit) {
+        Map<Long, Event> byId = new TreeMap<>(Comparator.reverseOrder());
+        first.forEach(event -> byId.put(event.getEventId(), event));
+        second.forEach(event -> byId.put(event.getEventId(), event));
+        return byId.values().stream().limit(limit).toList();
+    }
+
+    // Последние события ленты по возрастанию id; при переполнении старые вытесняются, и лента становится неполной
+    private static final class Timeline {
+        private final NavigableMap<Long, Event> events = new TreeMap<>();
+        private boolean loaded;
+        private boolean complete;
+
+        synchronized void load(List<Event> recent, boolean complete, int capacity) {
+            this.complete = complete;
+            this.loaded = true;
+            addAll(recent, capacity);
+        }
+
+        synchronized void addAll(List<Event> added, int capacity) {
+            added.forEach(event -> events.put(event.getEventId(), event));
+            while (events.size() > capacity) {
+                events.pollFirstEntry();
+                complete = false;
+            }
+        }
+
+        // null, если страницу нельзя собрать из памяти
+        synchronized List<Event> page(long before, int limit, Predicate<Event> visible) {
+            if (!loaded) {
+                return null;
+            }
+            List<Event> page = events.headMap(before, false).descendingMap().values().stream()
+                    .filter(visible)
+                    .limit(limit)
+                    .toList();
+            return page.size() == limit || complete ? page : null;
+        }
+    }
+}
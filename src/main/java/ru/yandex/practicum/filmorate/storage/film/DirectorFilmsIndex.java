@@ -0,0 +1,206 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorageListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+
+// Фильмография каждого режиссера в двух готовых порядках: по дате выхода и по лайкам
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DirectorFilmsIndex implements FilmStorageListener, DirectorStorageListener {
+    private final JdbcTemplate jdbc;
+    private final LikeBitmapIndex likeBitmapIndex;
+
+    private static final String LOAD_FILMS_QUERY = "SELECT film_id, release_date FROM films";
+    private static final String LOAD_DIRECTOR_FILMS_QUERY = "SELECT director_id, film_id FROM director_film";
+    private static final Comparator<Entry> BY_YEAR = Comparator.comparingLong(Entry::releaseDay)
+            .thenComparingLong(Entry::filmId);
+    private static final Comparator<Entry> BY_LIKES = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    // Изменения идут по одному под монопольной блокировкой, чтение под общей
+    private final RebuildableState<State> state = new RebuildableState<>(new State(), true);
+
+    @PostConstruct
+    public void rebuild() {
+        int replayed = state.rebuild(this::load);
+        log.info("Фильмографии режиссеров построены: {} режиссеров, повторено изменений во время сборки: {}",
+                state.read(current -> current.byYear.size()), replayed);
+    }
+
+    public List<Long> getFilmsSortedByYear(long directorId) {
+        return getFilms(directorId, true);
+    }
+
+    public List<Long> getFilmsSortedByLikes(long directorId) {
+        return getFilms(directorId, false);
+    }
+
+    @Override
+    public void onFilmSaved(Film film) {
+        long[] directorIds = film.getDirectors() == null ? new long[0] : film.getDirectors().stream()
+                .map(Director::getId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .mapToLong(Long::longValue)
+                .toArray();
+        long filmId = film.getId();
+        long releaseDay = film.getReleaseDate().toEpochDay();
+        state.apply(current -> {
+            current.unlinkFilm(filmId);
+            current.films.put(filmId, new Entry(filmId, releaseDay, likeBitmapIndex.getLikes(filmId)));
+            for (long directorId : directorIds) {
+                current.link(directorId, filmId);
+            }
+        });
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        state.apply(current -> {
+            current.unlinkFilm(filmId);
+            current.films.remove(filmId);
+        });
+    }
+
+    @Override
+    public void onLikeAdded(Long filmId, Long userId) {
+        refreshLikes(filmId);
+    }
+
+    @Override
+    public void onLikeRemoved(Long filmId, Long userId) {
+        refreshLikes(filmId);
+    }
+
+    @Override
+    public void onDirectorDeleted(Long directorId) {
+        state.apply(current -> current.removeDirector(directorId));
+    }
+
+    private List<Long> getFilms(long directorId, boolean byYear) {
+        return state.read(current -> {
+            NavigableSet<Entry> entries = (byYear ? current.byYear : current.byLikes).get(directorId);
+            if (entries == null) {
+                return List.of();
+            }
+            List<Long> filmIds = new ArrayList<>(entries.size());
+            entries.forEach(entry -> filmIds.add(entry.filmId()));
+            return filmIds;
+        });
+    }
+
+    // Число лайков перечитывается из LikeBitmapIndex, а не меняется на ±1: повтор после пересборки безопасен
+    private void refreshLikes(long filmId) {
+        state.apply(current -> {
+            Entry old = current.films.get(filmId);
+            if (old == null) {
+                return;
+            }
+            long likes = likeBitmapIndex.getLikes(filmId);
+            if (likes == old.likes()) {
+                return;
+            }
+            Entry entry = new Entry(filmId, old.releaseDay(), likes);
+            current.films.put(filmId, entry);
+            for (long directorId : current.filmDirectors.getOrDefault(filmId, new long[0])) {
+                NavigableSet<Entry> byLikes = current.byLikes.get(directorId);
+                byLikes.remove(old);
+                byLikes.add(entry);
+            }
+        });
+    }
+
+    private State load() {
+        State loaded = new State();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            long filmId = rs.getLong("film_id");
+            loaded.films.put(filmId, new Entry(filmId, rs.getDate("release_date").toLocalDate().toEpochDay(),
+                    likeBitmapIndex.getLikes(filmId)));
+        });
+        jdbc.query(LOAD_DIRECTOR_FILMS_QUERY, rs -> {
+            loaded.link(rs.getLong("director_id"), rs.getLong("film_id"));
+        });
+        return loaded;
+    }
+
+    private record Entry(long filmId, long releaseDay, long likes) {
+    }
+
+    private static class State {
+        private final Map<Long, Entry> films = new HashMap<>();
+        private final Map<Long, long[]> filmDirectors = new HashMap<>();
+        private final Map<Long, NavigableSet<Entry>> byYear = new HashMap<>();
+        private final Map<Long, NavigableSet<Entry>> byLikes = new HashMap<>();
+
+        private void link(long directorId, long filmId) {
+            Entry entry = films.get(filmId);
+            if (entry == null) {
+                return;
+            }
+            long[] directorIds = filmDirectors.getOrDefault(filmId, new long[0]);
+            long[] updated = Arrays.copyOf(directorIds, directorIds.length + 1);
+            updated[directorIds.length] = directorId;
+            filmDirectors.put(filmId, updated);
+            byYear.computeIfAbsent(directorId, id -> new TreeSet<>(BY_YEAR)).add(entry);
+            byLikes.computeIfAbsent(directorId, id -> new TreeSet<>(BY_LIKES)).add(entry);
+        }
+
+        private void unlinkFilm(long filmId) {
+            long[] directorIds = filmDirectors.remove(filmId);
+            Entry entry = films.get(filmId);
+            if (directorIds == null || entry == null) {
+                return;
+            }
+            for (long directorId : directorIds) {
+                removeFrom(byYear, directorId, entry);
+                removeFrom(byLikes, directorId, entry);
+            }
+        }
+
+        private void removeDirector(long directorId) {
+            NavigableSet<Entry> entries = byYear.remove(directorId);
+            byLikes.remove(directorId);
+            if (entries == null) {
+                return;
+            }
+            for (Entry entry : entries) {
+                long[] directorIds = filmDirectors.get(entry.filmId());
+                long[] remaining = Arrays.stream(directorIds)
+                        .filter(id -> id != directorId)
+                        .toArray();
+                if (remaining.length == 0) {
+                    filmDirectors.remove(entry.filmId());
+                } else {
+                    filmDirectors.put(entry.filmId(), remaining);
+                }
+            }
+        }
+
+        private static void removeFrom(Map<Long, NavigableSet<Entry>> index, long directorId, Entry entry) {
+            NavigableSet<Entry> entries = index.get(directorId);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    index.remove(directorId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorageListener;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+// Обратный индекс по основам слов из названий фильмов и имен режиссеров, поиск идет без обращений к БД
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmSearchIndex implements FilmStorageListener, DirectorStorageListener {
+    private final JdbcTemplate jdbc;
+    private final PopularFilmsIndex popularFilmsIndex;
+
+    private static final String LOAD_FILMS_QUERY = "SELECT film_id, title FROM films";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT director_id, name FROM director";
+    private static final String LOAD_DIRECTOR_FILMS_QUERY = "SELECT director_id, film_id FROM director_film";
+
+    private static final double TITLE_WEIGHT = 2.0;
+    private static final double DIRECTOR_WEIGHT = 1.0;
+    // Совпадение по началу основы (слово еще набирается) весит меньше точного
+    private static final double PREFIX_WEIGHT = 0.5;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();
+
+    @PostConstruct
+    public void rebuild() {
+        State newState = new State();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            newState.putFilm(rs.getLong("film_id"), rs.getString("title"));
+        });
+        jdbc.query(LOAD_DIRECTORS_QUERY, rs -> {
+            newState.putDirector(rs.getLong("director_id"), rs.getString("name"));
+        });
+        jdbc.query(LOAD_DIRECTOR_FILMS_QUERY, rs -> {
+            newState.link(rs.getLong("director_id"), rs.getLong("film_id"));
+        });
+        lock.writeLock().lock();
+        try {
+            state = newState;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Поисковый индекс построен: {} фильмов, {} основ в названиях, {} в именах режиссеров",
+                newState.filmStems.size(), newState.titleTerms.size(), newState.directorTerms.size());
+    }
+
+    // Каждое слово запроса должно найтись в названии или у режиссера; результат отсортирован по релевантности
+    public List<Long> search(String query, boolean byTitle, boolean byDirector, int offset, int limit) {
+        Set<String> queryStems = new LinkedHashSet<>(SearchTokenizer.stems(query));
+        if (queryStems.isEmpty() || !byTitle && !byDirector) {
+            return List.of();
+        }
+        Map<Long, Double> scores = null;
+        lock.readLock().lock();
+        try {
+            for (String stem : queryStems) {
+                Map<Long, Double> stemScores = new HashMap<>();
+                if (byTitle) {
+                    state.scoreTitles(stem, stemScores);
+                }
+                if (byDirector) {
+                    state.scoreDirectors(stem, stemScores);
+                }
+                if (scores == null) {
+                    scores = stemScores;
+                } else {
+                    scores.keySet().retainAll(stemScores.keySet());
+                    scores.replaceAll((filmId, score) -> score + stemScores.get(filmId));
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, Double> result = scores;
+        return result.keySet().stream()
+                .sorted(Comparator.<Long>comparingDouble(result::get).reversed()
+                        .thenComparing(Comparator.comparingLong(popularFilmsIndex::getLikes).reversed())
+                        .thenComparing(Comparator.<Long>reverseOrder()))
+                .skip(offset)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void onFilmSaved(Film film) {
+        Set<Long> directorIds = film.getDirectors() == null ? Set.of() : film.getDirectors().stream()
+                .map(Director::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        lock.writeLock().lock();
+        try {
+            state.putFilm(film.getId(), film.getTitle());
+            state.unlinkFilm(film.getId());
+            directorIds.forEach(directorId -> state.link(directorId, film.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            state.removeFilm(filmId);
+            state.unlinkFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDirectorSaved(Director director) {
+        lock.writeLock().lock();
+        try {
+            state.putDirector(director.getId(), director.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDirectorDeleted(Long directorId) {
+        lock.writeLock().lock();
+        try {
+            state.removeDirector(directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static double idf(int totalDocs, int docs) {
+        return Math.log(1 + (double) totalDocs / docs);
+    }
+
+    private static class State {
+        private final NavigableMap<String, Map<Long, Integer>> titleTerms = new TreeMap<>();
+        private final NavigableMap<String, Set<Long>> directorTerms = new TreeMap<>();
+        private final Map<Long, List<String>> filmStems = new HashMap<>();
+        private final Map<Long, List<String>> directorStems = new HashMap<>();
+        private final Map<Long, Set<Long>> directorFilms = new HashMap<>();
+        private final Map<Long, Set<Long>> filmDirectors = new HashMap<>();
+
+        private void scoreTitles(String stem, Map<Long, Double> scores) {
+            int totalFilms = filmStems.size();
+            prefixRange(titleTerms, stem).forEach((term, postings) -> {
+                double weight = TITLE_WEIGHT * (term.equals(stem) ? 1 : PREFIX_WEIGHT) * idf(totalFilms, postings.size());
+                postings.forEach((filmId, count) -> scores.merge(filmId, weight * count, Math::max));
+            });
+        }
+
+        private void scoreDirectors(String stem, Map<Long, Double> scores) {
+            int totalFilms = filmStems.size();
+            prefixRange(directorTerms, stem).forEach((term, directorIds) -> {
+                for (Long directorId : directorIds) {
+                    Set<Long> films = directorFilms.getOrDefault(directorId, Set.of());
+                    if (films.isEmpty()) {
+                        continue;
+                    }
+                    double weight = DIRECTOR_WEIGHT * (term.equals(stem) ? 1 : PREFIX_WEIGHT) * idf(totalFilms, films.size());
+                    films.forEach(filmId -> scores.merge(filmId, weight, Math::max));
+                }
+            });
+        }
+
+        private void putFilm(long filmId, String title) {
+            removeFilm(filmId);
+            List<String> stems = SearchTokenizer.stems(title);
+            filmStems.put(filmId, stems);
+            stems.forEach(stem -> titleTerms.computeIfAbsent(stem, s -> new HashMap<>()).merge(filmId, 1, Integer::sum));
+        }
+
+        private void removeFilm(long filmId) {
+            List<String> stems = filmStems.remove(filmId);
+            if (stems == null) {
+                return;
+            }
+            for (String stem : new HashSet<>(stems)) {
+                Map<Long, Integer> postings = titleTerms.get(stem);
+                if (postings != null) {
+                    postings.remove(filmId);
+                    if (postings.isEmpty()) {
+                        titleTerms.remove(stem);
+                    }
+                }
+            }
+        }
+
+        private void putDirector(long directorId, String name) {
+            removeDirectorStems(directorId);
+            List<String> stems = SearchTokenizer.stems(name);
+            directorStems.put(directorId, stems);
+            stems.forEach(stem -> directorTerms.computeIfAbsent(stem, s -> new HashSet<>()).add(directorId));
+        }
+
+        private void removeDirector(long directorId) {
+            removeDirectorStems(directorId);
+            Set<Long> films = directorFilms.remove(directorId);
+            if (films == null) {
+                return;
+            }
+            for (Long filmId : films) {
+                Set<Long> directorIds = filmDirectors.get(filmId);
+                if (directorIds != null) {
+                    directorIds.remove(directorId);
+                }
+            }
+        }
+
+        private void removeDirectorStems(long directorId) {
+            List<String> stems = directorStems.remove(directorId);
+            if (stems == null) {
+                return;
+            }
+            for (String stem : stems) {
+                Set<Long> directorIds = directorTerms.get(stem);
+                if (directorIds != null) {
+                    directorIds.remove(directorId);
+                    if (directorIds.isEmpty()) {
+                        directorTerms.remove(stem);
+                    }
+                }
+            }
+        }
+
+        private void link(long directorId, long filmId) {
+            directorFilms.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+            filmDirectors.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+        }
+
+        private void unlinkFilm(long filmId) {
+            Set<Long> directorIds = filmDirectors.remove(filmId);
+            if (directorIds == null) {
+                return;
+            }
+            for (Long directorId : directorIds) {
+                Set<Long> films = directorFilms.get(directorId);
+                if (films != null) {
+                    films.remove(filmId);
+                }
+            }
+        }
+
+        private static <V> Map<String, V> prefixRange(NavigableMap<String, V> terms, String prefix) {
+            return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+    }
+}
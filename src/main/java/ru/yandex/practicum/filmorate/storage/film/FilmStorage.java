@@ -4,37 +4,34 @@ import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film save(Film film);
 
+    List<Film> saveAll(List<Film> films);
+
     Film update(Film film);
 
     Optional<Film> find(Long filmId);
 
-    List<Film> getPopularFilms(Integer count, Integer genreId, Integer year);
-
     Boolean existById(Long filmId);
 
     List<Film> getAllFilms();
 
-    List<Film> getFilmsByName(String query);
+    List<Film> getFilmsByIds(List<Long> filmIds);
 
-    List<Film> getFilmsByDirector(String query);
+    List<Film> getFilmsPage(Long afterId, Integer limit);
 
-    List<Film> getFilmsByNameAndDirector(String query);
+    void streamAllFilms(Consumer<Film> consumer);
 
     void addLike(Long filmId, Long userId);
 
     void dislike(Long filmId, Long userId);
 
-    List<Film> getRecommendations(Long userId);
-
-    List<Film> getDirectorFilmSortByYear(Long directorId);
-
-    List<Film> getDirectorFilmSortByLikes(Long directorId);
+    void deleteLikesByUserId(Long userId);
 
-    List<Film> getFilmsByUserId(Long userId);
+    int reconcileLikeCounts();
 
     void deleteFilmById(Long filmId);
 }
\ No newline at end of file
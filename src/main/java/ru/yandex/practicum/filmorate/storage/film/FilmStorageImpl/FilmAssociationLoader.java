@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.storage.film.FilmStorageImpl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.Genre;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Догружает жанры и режиссеров сразу для всей страницы фильмов: по одному IN-запросу на связь
+@Component
+@RequiredArgsConstructor
+public class FilmAssociationLoader {
+    private final JdbcTemplate jdbc;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String GET_GENRES_BY_FILM_IDS_QUERY = """
+            SELECT fg.film_id, g.genre_id, g.name
+            FROM film_genre fg
+            JOIN genre g ON g.genre_id = fg.genre_id
+            WHERE fg.film_id IN (%s)
+            ORDER BY fg.film_id, g.genre_id
+            """;
+    private static final String GET_DIRECTORS_BY_FILM_IDS_QUERY = """
+            SELECT df.film_id, d.director_id, d.name
+            FROM director_film df
+            JOIN director d ON d.director_id = df.director_id
+            WHERE df.film_id IN (%s)
+            ORDER BY df.film_id, d.director_id
+            """;
+
+    public List<Film> load(List<Film> films) {
+        for (int from = 0; from < films.size(); from += BATCH_SIZE) {
+            loadBatch(films.subList(from, Math.min(from + BATCH_SIZE, films.size())));
+        }
+        return films;
+    }
+
+    private void loadBatch(List<Film> films) {
+        Map<Long, Film> filmById = new HashMap<>();
+        for (Film film : films) {
+            film.setGenres(new ArrayList<>());
+            film.setDirectors(new ArrayList<>());
+            filmById.put(film.getId(), film);
+        }
+        if (filmById.isEmpty()) {
+            return;
+        }
+        Object[] ids = filmById.keySet().toArray();
+        String inSql = filmById.keySet().stream()
+                .map(id -> "?")
+                .collect(Collectors.joining(", "));
+
+        jdbc.query(String.format(GET_GENRES_BY_FILM_IDS_QUERY, inSql), rs -> {
+            filmById.get(rs.getLong("film_id")).getGenres()
+                    .add(new Genre(rs.getInt("genre_id"), rs.getString("name")));
+        }, ids);
+        jdbc.query(String.format(GET_DIRECTORS_BY_FILM_IDS_QUERY, inSql), rs -> {
+            filmById.get(rs.getLong("film_id")).getDirectors()
+                    .add(new Director(rs.getLong("director_id"), rs.getString("name")));
+        }, ids);
+    }
+}
@@ -2,22 +2,45 @@ package ru.yandex.practicum.filmorate.storage.film.FilmStorageImpl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.Genre;
+import ru.yandex.practicum.filmorate.dto.Mpa;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exception.FilmNotUpdateException;
 import ru.yandex.practicum.filmorate.exception.GenreNotExistException;
 import ru.yandex.practicum.filmorate.exception.MpaNotExistException;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
+import ru.yandex.practicum.filmorate.storage.EntityIds;
+import ru.yandex.practicum.filmorate.storage.RequestMemo;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorageListener;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCatalog;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component("film-bd")
@@ -25,11 +48,19 @@ import java.util.Optional;
 public class FilmDbStorage implements FilmStorage {
     private final JdbcTemplate jdbc;
     private final FilmRowMapper filmRowMapper;
+    private final FilmAssociationLoader associationLoader;
+    private final ReferenceDataCatalog catalog;
+    private final EntityIds entityIds;
+    private final LikeWriteBuffer likeWriteBuffer;
+    private final List<FilmStorageListener> listeners;
+
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final int IDS_BATCH_SIZE = 1000;
 
-    private static final String FIND_BY_ID_QUERY =
-            "SELECT * FROM films f WHERE f.film_id = ?";
     private static final String FIND_BY_ID_GENRE_QUERY =
             "SELECT genre_id FROM  film_genre where film_id = ?";
+    private static final String FIND_BY_ID_DIRECTOR_QUERY =
+            "SELECT director_id FROM director_film WHERE film_id = ?";
     private static final String INSERT_QUERY =
             "INSERT INTO films (title, description, release_date, duration, rating_id) " +
                     "VALUES (?, ?, ?, ?, ?)";
@@ -42,310 +73,71 @@ public class FilmDbStorage implements FilmStorage {
     private static final String UPDATE_QUERY =
             "UPDATE films SET title = ?, description = ?, release_date = ?, duration = ?, rating_id = ? WHERE film_id = ?";
     private static final String DELETE_FILM_GENRE_QUERY =
-            "DELETE FROM film_genre WHERE film_id = ?";
-    private static final String DELETE_DIRECTOR_QUERY = "DELETE FROM director_film where film_id = ?";
-    private static final String GET_ALL_FILMS_QUERY = """
-             SELECT f.film_id, f.title, f.description, f.release_date, f.duration, f.RATING_ID AS rating_id,
-             r.name AS rating_name,
-            STRING_AGG(fg.genre_id, ',') AS genres,
-            STRING_AGG(g.name, ',') AS genres_name,
-            STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-            STRING_AGG(d.NAME, ',') AS directors_name
-            FROM films f
-            JOIN ratings r ON f.rating_id = r.rating_id
-            LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-            LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-            LEFT JOIN DIRECTOR_FILM df ON df.FILM_ID = f.FILM_ID
-            LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            GROUP BY f.film_id
-            ORDER BY f.film_id
-            """;
-    private static final String GET_FILM_BY_ID = """
-            SELECT
-                f.film_id,
-                f.title,
-                f.description,
-                f.release_date,
-                f.duration,
-                f.RATING_ID AS rating_id,
-                r.name AS rating_name,
-                STRING_AGG(fg.genre_id, ',') AS genres,
-                STRING_AGG(g.name, ',') AS genres_name,
-                STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-                STRING_AGG(d.NAME, ',') AS directors_name
+            "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ?";
+    private static final String DELETE_DIRECTOR_QUERY = "DELETE FROM director_film where film_id = ? AND director_id = ?";
+    private static final String SELECT_FILMS = """
+            SELECT f.film_id, f.title, f.description, f.release_date, f.duration, f.rating_id,
+            r.name AS rating_name
             FROM films f
             LEFT JOIN ratings r ON f.rating_id = r.rating_id
-            LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-            LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-            LEFT JOIN DIRECTOR_FILM df ON df.FILM_ID = f.FILM_ID
-            LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            WHERE f.FILM_ID = ?
-            GROUP BY f.film_id
             """;
-    private static final String SET_LIKE_QUERY = "MERGE INTO film_scope (USER_ID, FILM_ID) KEY (USER_ID, FILM_ID) VALUES (?, ?);";
-    private static final String SET_DISLIKE_QUERY = "DELETE FROM film_scope WHERE user_id = ? AND FILM_ID = ?";
-    private static final String GET_POPULAR_FILMS_QUERY = """
-            SELECT
-                f.film_id,
-                f.title,
-                f.description,
-                f.release_date,
-                f.duration,
-                f.rating_id,
-                r.name AS rating_name,
-                STRING_AGG(fg.genre_id::text, ',' ORDER BY g.genre_id) AS genres,
-                STRING_AGG(g.name, ',' ORDER BY g.genre_id) AS genres_name,
-                STRING_AGG(df.director_id::text, ',' ORDER BY d.director_id) AS directors,
-                STRING_AGG(d.name, ',' ORDER BY d.director_id) AS directors_name
-            FROM films f
-            LEFT JOIN ratings r ON f.rating_id = r.rating_id
-            LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-            LEFT JOIN genre g ON g.genre_id = fg.genre_id
-            LEFT JOIN film_scope fl ON fl.film_id = f.film_id
-            LEFT JOIN director_film df ON df.film_id = f.film_id
-            LEFT JOIN director d ON d.director_id = df.director_id
-            WHERE
-                (? IS NULL OR EXTRACT(YEAR FROM f.release_date) = ?)
-            GROUP BY f.film_id, f.title, f.description, f.release_date, f.duration, f.rating_id, r.name
-            HAVING
-                (? IS NULL OR ',' || STRING_AGG(fg.genre_id::text, ',' ORDER BY g.genre_id) || ',' LIKE ?)
-            ORDER BY
-                COUNT(fl.user_id) DESC,
-                f.film_id ASC
+    private static final String GET_ALL_FILMS_QUERY = SELECT_FILMS + "ORDER BY f.film_id";
+    private static final String GET_FILMS_PAGE_QUERY = SELECT_FILMS + """
+            WHERE f.film_id > ?
+            ORDER BY f.film_id
             LIMIT ?
             """;
-    private static final String EXIST_BY_ID_QUERY = "SELECT COUNT(*) > 0 FROM films WHERE film_id = ?";
-    private static final String EXIST_MPA_BY_ID_QUERY = "SELECT COUNT(*) FROM ratings WHERE rating_id = ?";
-    private static final String EXIST_GENRE_BY_ID_QUERY = "SELECT COUNT(*)  FROM genre where genre_id = ?";
-    private static final String GET_RECOMMENDATION_QUERY = """
-            SELECT
-              f.film_id,
-              f.title,
-              f.description,
-              f.release_date,
-              f.duration,
-              f.rating_id,
-              r.name AS rating_name,
-              STRING_AGG(fg.genre_id, ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-              STRING_AGG(d.NAME, ',') AS directors_name
-            FROM
-              films f
-              LEFT JOIN ratings r ON f.rating_id = r.rating_id
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-              LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-              LEFT JOIN film_scope fl ON fl.film_id = f.film_id
-              LEFT JOIN DIRECTOR_FILM df ON df.FILM_ID = f.FILM_ID
-              LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            WHERE
-              f.film_id IN (
-                SELECT
-                  fl.film_id
-                FROM
-                  film_scope fl
-                WHERE
-                  fl.user_id IN (
-                    SELECT
-                      fl1.USER_ID
-                    FROM
-                      film_scope fl
-                      LEFT JOIN film_scope fl1 ON fl.FILM_ID = fl1.FILM_ID
-                    WHERE
-                      fl.USER_ID = ?
-                      AND fl1.USER_ID <> ?
-                    GROUP BY
-                      fl1.USER_ID
-                    ORDER BY
-                      count(*) DESC
-                    LIMIT
-                      1
-                  ) AND fl.FILM_ID NOT IN (
-                    SELECT
-                      fl.film_id
-                    FROM
-                      film_scope fl
-                    WHERE
-                      fl.user_id = ?
-                  )
-              )
-            GROUP BY
-              f.film_id
-            ORDER BY
-              COUNT(fl.user_id) DESC,
-              f.film_id ASC
-            """;
-    private static final String GET_COMMON_FILMS_QUERY = """
-            SELECT
-              f.film_id,
-              f.title,
-              f.description,
-              f.release_date,
-              f.duration,
-              f.rating_id,
-              r.name AS rating_name,
-              STRING_AGG(fg.genre_id, ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-              STRING_AGG(d.NAME, ',') AS directors_name
+    // Фильм, его жанры и режиссеры одним запросом: строки различаются по kind и идут в этом порядке
+    private static final String GET_FILM_BY_ID = """
+            SELECT 0 AS kind, f.film_id AS id, f.title AS name, f.description, f.release_date, f.duration,
+            f.rating_id, r.name AS rating_name
             FROM films f
-            JOIN ratings r ON f.rating_id = r.rating_id
-            LEFT JOIN director_film df ON f.film_id = df.film_id
-            LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-            LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-            LEFT JOIN film_scope fl ON f.film_id = fl.film_id
-            LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            WHERE fl.USER_ID = ?
-            GROUP BY
-              f.film_id
-            """;
-    private static final String GET_DIRECTORS_FILM_SORT_BY_YEAR = """
-            SELECT\s
-              f.film_id,\s
-              f.title,\s
-              f.description,\s
-              f.release_date,\s
-              f.duration,\s
-              f.RATING_ID AS rating_id,\s
-              r.name AS rating_name,
-              STRING_AGG(fg.genre_id, ',') AS genres,\s
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-              STRING_AGG(d.NAME, ',') AS directors_name
-            FROM\s
-              films f\s
-              JOIN ratings r ON f.rating_id = r.rating_id\s
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id\s
-              LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-              LEFT JOIN DIRECTOR_FILM df ON df.FILM_ID = f.FILM_ID
-              LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            WHERE\s
-              df.DIRECTOR_ID = ?\s
-            GROUP BY\s
-              f.film_id\s
-            ORDER BY\s
-              f.release_date
-            """;
-    private static final String GET_DIRECTOR_FILM_SORT_BY_LIKES = """
-            SELECT\s
-              f.film_id,\s
-              f.title,\s
-              f.description,\s
-              f.release_date,\s
-              f.duration,\s
-              f.rating_id,\s
-              r.name AS rating_name,
-              STRING_AGG(fg.genre_id, ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(df.DIRECTOR_ID, ',') AS directors,
-              STRING_AGG(d.NAME, ',') AS directors_name
-            FROM\s
-              films f\s
-              JOIN ratings r ON f.rating_id = r.rating_id
-              JOIN director_film df ON f.film_id = df.film_id\s
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id\s
-              LEFT JOIN GENRE g on g.genre_id = fg.genre_id
-              LEFT JOIN film_scope fl ON f.film_id = fl.film_id\s
-              LEFT JOIN DIRECTOR d ON d.DIRECTOR_ID = df.DIRECTOR_ID
-            WHERE\s
-              df.director_id = ?\s
-            GROUP BY\s
-              f.film_id,\s
-              f.title,\s
-              f.description,\s
-              f.release_date,\s
-              f.duration,\s
-              f.rating_id\s
-            ORDER BY\s
-              COUNT(fl.user_id) DESC
+            LEFT JOIN ratings r ON f.rating_id = r.rating_id
+            WHERE f.film_id = ?
+            UNION ALL
+            SELECT 1, g.genre_id, g.name, NULL, NULL, NULL, NULL, NULL
+            FROM film_genre fg
+            JOIN genre g ON g.genre_id = fg.genre_id
+            WHERE fg.film_id = ?
+            UNION ALL
+            SELECT 2, d.director_id, d.name, NULL, NULL, NULL, NULL, NULL
+            FROM director_film df
+            JOIN director d ON d.director_id = df.director_id
+            WHERE df.film_id = ?
+            ORDER BY kind, id
             """;
-    private static final String GET_FILM_BY_NAME_LIKE_QUERY = """
-            SELECT
-              f.film_id,
-              f.title,
-              f.description,
-              f.release_date,
-              f.duration,
-              f.rating_id,
-              r.name AS rating_name,
-              STRING_AGG(CAST(fg.genre_id AS VARCHAR), ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(CAST(df.director_id AS VARCHAR), ',') AS directors,
-              STRING_AGG(d.name, ',') AS directors_name
-            FROM
-              films f
-              JOIN ratings r ON f.rating_id = r.rating_id
-              LEFT JOIN director_film df ON f.film_id = df.film_id
-              LEFT JOIN director d ON df.director_id = d.director_id
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-              LEFT JOIN genre g ON g.genre_id = fg.genre_id
-            WHERE
-              f.title ILIKE ?
-            GROUP BY
-              f.film_id
+    private static final String GET_FILMS_BY_IDS_QUERY = SELECT_FILMS + "WHERE f.film_id IN (%s)";
+    private static final String SET_LIKE_QUERY = """
+            INSERT INTO film_scope (user_id, film_id)
+            SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM film_scope WHERE user_id = ? AND film_id = ?)
             """;
-    private static final String GET_FILM_BY_DIRECTOR_LIKE_QUERY = """
-            SELECT
-              f.film_id,
-              f.title,
-              f.description,
-              f.release_date,
-              f.duration,
-              f.rating_id,
-              r.name AS rating_name,
-              STRING_AGG(CAST(fg.genre_id AS VARCHAR), ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(CAST(df.director_id AS VARCHAR), ',') AS directors,
-              STRING_AGG(d.name, ',') AS directors_name
-            FROM
-              films f
-              JOIN ratings r ON f.rating_id = r.rating_id
-              LEFT JOIN director_film df ON f.film_id = df.film_id
-              LEFT JOIN director d ON df.director_id = d.director_id
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-              LEFT JOIN genre g ON g.genre_id = fg.genre_id
-            WHERE
-              d.name ILIKE ?
-            GROUP BY
-              f.film_id
+    private static final String SET_DISLIKE_QUERY = "DELETE FROM film_scope WHERE user_id = ? AND FILM_ID = ?";
+    private static final String INCREMENT_LIKE_COUNT_QUERY =
+            "UPDATE films SET like_count = like_count + 1 WHERE film_id = ?";
+    private static final String DECREMENT_LIKE_COUNT_QUERY =
+            "UPDATE films SET like_count = like_count - 1 WHERE film_id = ?";
+    private static final String DECREMENT_LIKE_COUNT_BY_USER_QUERY = """
+            UPDATE films SET like_count = like_count - 1
+            WHERE film_id IN (SELECT film_id FROM film_scope WHERE user_id = ?)
             """;
-    private static final String GET_FILM_BY_NAME_OR_DIRECTOR_QUERY = """
-            SELECT
-              f.film_id,
-              f.title,
-              f.description,
-              f.release_date,
-              f.duration,
-              f.rating_id,
-              r.name AS rating_name,
-              STRING_AGG(CAST(fg.genre_id AS VARCHAR), ',') AS genres,
-              STRING_AGG(g.name, ',') AS genres_name,
-              STRING_AGG(CAST(df.director_id AS VARCHAR), ',') AS directors,
-              STRING_AGG(d.name, ',') AS directors_name
-            FROM
-              films f
-              JOIN ratings r ON f.rating_id = r.rating_id
-              LEFT JOIN director_film df ON f.film_id = df.film_id
-              LEFT JOIN director d ON df.director_id = d.director_id
-              LEFT JOIN film_genre fg ON f.film_id = fg.film_id
-              LEFT JOIN genre g ON g.genre_id = fg.genre_id
-            WHERE
-              f.title ILIKE ? OR d.name Ilike ?
-            GROUP BY
-              f.film_id
-             ORDER BY f.film_id DESC
+    private static final String DELETE_LIKES_BY_USER_QUERY = "DELETE FROM film_scope WHERE user_id = ?";
+    private static final String GET_LIKED_FILM_IDS_QUERY = "SELECT film_id FROM film_scope WHERE user_id = ?";
+    private static final String RECONCILE_LIKE_COUNT_QUERY = """
+            UPDATE films f
+            SET like_count = (SELECT COUNT(*) FROM film_scope fl WHERE fl.film_id = f.film_id)
+            WHERE like_count <> (SELECT COUNT(*) FROM film_scope fl WHERE fl.film_id = f.film_id)
             """;
+    private static final String GET_REVIEW_IDS_BY_FILM_QUERY = "SELECT review_id FROM review WHERE film_id = ?";
     private static final String DELETE_FILM_QUERY = "DELETE FROM films WHERE film_id = ?";
 
     @Override
+    @Transactional
     public Film save(Film film) {
-        if (jdbc.queryForObject(EXIST_MPA_BY_ID_QUERY, Integer.class, film.getMpa().getId()) == 0) {
+        if (!catalog.mpaExists(film.getMpa().getId())) {
             throw new MpaNotExistException("Рейтинга с id = " + film.getMpa().getId() + " не существует");
         }
-        if (film.getGenres() != null && !film.getGenres().stream()
-                .allMatch(genre -> jdbc.queryForObject(EXIST_GENRE_BY_ID_QUERY, Integer.class, genre.getId()) > 0)) {
-            throw new GenreNotExistException("Жанра который вы указали не существует");
-        }
+        Set<Integer> genreIds = getGenreIds(film);
+        validateGenres(genreIds);
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(connection -> {
             PreparedStatement ps = connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
@@ -358,18 +150,67 @@ public class FilmDbStorage implements FilmStorage {
         }, keyHolder);
         long filmId = keyHolder.getKey().longValue();
         film.setId(filmId);
-        if (film.getGenres() != null) {
-            film.getGenres().forEach(x -> jdbc.update(INSERT_FILM_GENRE_QUERY, filmId, x.getId()));
-        }
-        if (film.getDirectors() != null) {
-            film.getDirectors().forEach(x -> jdbc.update(INSERT_FILM_DIRECTOR, filmId, x.getId()));
-        }
+        batchUpdate(INSERT_FILM_GENRE_QUERY, filmId, genreIds);
+        batchUpdate(INSERT_FILM_DIRECTOR, filmId, getDirectorIds(film));
+        entityIds.films().add(filmId);
+        notifyListeners(listener -> listener.onFilmSaved(film));
 
         return film;
     }
 
+    // Фильмы уже проверены вызывающей стороной: вставка фильмов и связей идет пакетами в одной транзакции
     @Override
+    @Transactional
+    public List<Film> saveAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getTitle());
+                        ps.setString(2, film.getDescription());
+                        ps.setDate(3, Date.valueOf(film.getReleaseDate()));
+                        ps.setLong(4, film.getDuration().toMinutes());
+                        ps.setInt(5, film.getMpa().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Object[]> directorRows = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            long filmId = ((Number) keys.get(i).values().iterator().next()).longValue();
+            film.setId(filmId);
+            getGenreIds(film).forEach(genreId -> genreRows.add(new Object[]{filmId, genreId}));
+            getDirectorIds(film).forEach(directorId -> directorRows.add(new Object[]{filmId, directorId}));
+        }
+        if (!genreRows.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRE_QUERY, genreRows);
+        }
+        if (!directorRows.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_DIRECTOR, directorRows);
+        }
+        entityIds.films().addAll(films.stream().map(Film::getId).toList());
+        notifyListeners(listener -> films.forEach(listener::onFilmSaved));
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film update(Film film) {
+        if (!catalog.mpaExists(film.getMpa().getId())) {
+            throw new MpaNotExistException("Рейтинга с id = " + film.getMpa().getId() + " не существует");
+        }
         int updated = jdbc.update(UPDATE_QUERY,
                 film.getTitle(),
                 film.getDescription(),
@@ -382,106 +223,165 @@ public class FilmDbStorage implements FilmStorage {
             throw new FilmNotUpdateException("Фильм не обновился");
         }
 
-        jdbc.update(DELETE_FILM_GENRE_QUERY, film.getId());
-        if (film.getGenres() != null) {
-            film.getGenres().forEach(genre ->
-                    jdbc.update(INSERT_FILM_GENRE_QUERY, film.getId(), genre.getId()));
-        }
-        jdbc.update(DELETE_DIRECTOR_QUERY, film.getId());
-        if (film.getDirectors() != null) {
-            film.getDirectors().forEach(x -> jdbc.update(INSERT_FILM_DIRECTOR, film.getId(), x.getId()));
-        }
+        Set<Integer> oldGenreIds = new HashSet<>(jdbc.queryForList(FIND_BY_ID_GENRE_QUERY, Integer.class, film.getId()));
+        Set<Integer> newGenreIds = getGenreIds(film);
+        Set<Integer> addedGenreIds = difference(newGenreIds, oldGenreIds);
+        validateGenres(addedGenreIds);
+        batchUpdate(DELETE_FILM_GENRE_QUERY, film.getId(), difference(oldGenreIds, newGenreIds));
+        batchUpdate(INSERT_FILM_GENRE_QUERY, film.getId(), addedGenreIds);
+
+        Set<Long> oldDirectorIds = new HashSet<>(jdbc.queryForList(FIND_BY_ID_DIRECTOR_QUERY, Long.class, film.getId()));
+        Set<Long> newDirectorIds = getDirectorIds(film);
+        batchUpdate(DELETE_DIRECTOR_QUERY, film.getId(), difference(oldDirectorIds, newDirectorIds));
+        batchUpdate(INSERT_FILM_DIRECTOR, film.getId(), difference(newDirectorIds, oldDirectorIds));
+        RequestMemo.evict("film:" + film.getId());
+        notifyListeners(listener -> listener.onFilmSaved(film));
         return film;
     }
 
     @Override
     public Optional<Film> find(Long id) {
-        try {
-            Film film = jdbc.queryForObject(GET_FILM_BY_ID, filmRowMapper, id);
-            return Optional.ofNullable(film);
-        } catch (EmptyResultDataAccessException e) {
+        if (!existById(id)) {
             return Optional.empty();
         }
-    }
-
-    public List<Film> getCommonFilms(Long userId, Long friendId) {
-        try {
-            return jdbc.query(GET_COMMON_FILMS_QUERY, filmRowMapper, userId, friendId);
-        } catch (EmptyResultDataAccessException e) {
-            return List.of();
-        }
+        return RequestMemo.get("film:" + id, () -> jdbc.query(GET_FILM_BY_ID, rs -> {
+            Film film = null;
+            while (rs.next()) {
+                int kind = rs.getInt("kind");
+                // Строки фильма нет (удален после проверки existById) — его жанры и режиссеры пропускаем
+                if (kind != 0 && film == null) {
+                    continue;
+                }
+                switch (kind) {
+                    case 0 -> film = Film.builder()
+                            .id(rs.getLong("id"))
+                            .title(rs.getString("name"))
+                            .description(rs.getString("description"))
+                            .releaseDate(rs.getDate("release_date").toLocalDate())
+                            .duration(Duration.ofMinutes(rs.getInt("duration")))
+                            .mpa(new Mpa(rs.getInt("rating_id"), rs.getString("rating_name")))
+                            .genres(new ArrayList<>())
+                            .directors(new ArrayList<>())
+                            .build();
+                    case 1 -> film.getGenres().add(new Genre(rs.getInt("id"), rs.getString("name")));
+                    default -> film.getDirectors().add(new Director(rs.getLong("id"), rs.getString("name")));
+                }
+            }
+            return Optional.ofNullable(film);
+        }, id, id, id));
     }
 
     @Override
     public List<Film> getAllFilms() {
-        return jdbc.query(GET_ALL_FILMS_QUERY, filmRowMapper);
+        return queryFilms(GET_ALL_FILMS_QUERY);
     }
 
     @Override
-    public List<Film> getFilmsByName(String query) {
-        return jdbc.query(GET_FILM_BY_NAME_LIKE_QUERY, filmRowMapper, "%" + query + "%");
+    public List<Film> getFilmsByIds(List<Long> filmIds) {
+        Map<Long, Film> filmById = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IDS_BATCH_SIZE) {
+            List<Long> batch = filmIds.subList(from, Math.min(from + IDS_BATCH_SIZE, filmIds.size()));
+            String inSql = batch.stream()
+                    .map(id -> "?")
+                    .collect(Collectors.joining(", "));
+            jdbc.query(String.format(GET_FILMS_BY_IDS_QUERY, inSql), filmRowMapper, batch.toArray())
+                    .forEach(film -> filmById.put(film.getId(), film));
+        }
+        List<Film> films = filmIds.stream()
+                .map(filmById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return associationLoader.load(films);
     }
 
     @Override
-    public List<Film> getFilmsByDirector(String query) {
-        return jdbc.query(GET_FILM_BY_DIRECTOR_LIKE_QUERY, filmRowMapper, "%" + query + "%");
+    public List<Film> getFilmsPage(Long afterId, Integer limit) {
+        return queryFilms(GET_FILMS_PAGE_QUERY, afterId == null ? 0L : afterId, limit);
     }
 
     @Override
-    public List<Film> getFilmsByNameAndDirector(String query) {
-        return jdbc.query(GET_FILM_BY_NAME_OR_DIRECTOR_QUERY, filmRowMapper, "%" + query + "%", "%" + query + "%");
+    public void streamAllFilms(Consumer<Film> consumer) {
+        List<Film> chunk = new ArrayList<>(EXPORT_FETCH_SIZE);
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(GET_ALL_FILMS_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(filmRowMapper.mapRow(rs, rs.getRow()));
+            if (chunk.size() == EXPORT_FETCH_SIZE) {
+                associationLoader.load(chunk).forEach(consumer);
+                chunk.clear();
+            }
+        });
+        associationLoader.load(chunk).forEach(consumer);
     }
 
     @Override
+    @Transactional
     public void addLike(Long filmId, Long userId) {
-        jdbc.update(SET_LIKE_QUERY, userId, filmId);
+        if (likeWriteBuffer.isEnabled()) {
+            likeWriteBuffer.like(filmId, userId,
+                    () -> listeners.forEach(listener -> listener.onLikeAdded(filmId, userId)));
+            return;
+        }
+        try {
+            if (jdbc.update(SET_LIKE_QUERY, userId, filmId, userId, filmId) == 1) {
+                jdbc.update(INCREMENT_LIKE_COUNT_QUERY, filmId);
+                notifyListeners(listener -> listener.onLikeAdded(filmId, userId));
+            }
+        } catch (DuplicateKeyException e) {
+            log.debug("Лайк пользователя {} фильму {} уже поставлен параллельным запросом", userId, filmId);
+        }
     }
 
     @Override
+    @Transactional
     public void dislike(Long filmId, Long userId) {
-        jdbc.update(SET_DISLIKE_QUERY, userId, filmId);
-    }
-
-    @Override
-    public Boolean existById(Long id) {
-        return jdbc.queryForObject(EXIST_BY_ID_QUERY, Boolean.class, id);
-    }
-
-    @Override
-    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
-        String genreForQuery;
-        if (genreId != null) {
-            genreForQuery = "%" + genreId + "%";
-        } else {
-            genreForQuery = null;
+        if (likeWriteBuffer.isEnabled()) {
+            likeWriteBuffer.dislike(filmId, userId,
+                    () -> listeners.forEach(listener -> listener.onLikeRemoved(filmId, userId)));
+            return;
+        }
+        if (jdbc.update(SET_DISLIKE_QUERY, userId, filmId) == 1) {
+            jdbc.update(DECREMENT_LIKE_COUNT_QUERY, filmId);
+            notifyListeners(listener -> listener.onLikeRemoved(filmId, userId));
         }
-        return jdbc.query(GET_POPULAR_FILMS_QUERY, filmRowMapper, year, year, genreForQuery, genreForQuery, count);
-
-    }
-
-    public List<Film> getRecommendations(Long userId) {
-        return jdbc.query(GET_RECOMMENDATION_QUERY, filmRowMapper, userId, userId, userId);
     }
 
     @Override
-    public List<Film> getDirectorFilmSortByYear(Long directorId) {
-        return jdbc.query(GET_DIRECTORS_FILM_SORT_BY_YEAR, filmRowMapper, directorId);
+    @Transactional
+    public void deleteLikesByUserId(Long userId) {
+        likeWriteBuffer.flush();
+        List<Long> filmIds = jdbc.queryForList(GET_LIKED_FILM_IDS_QUERY, Long.class, userId);
+        jdbc.update(DECREMENT_LIKE_COUNT_BY_USER_QUERY, userId);
+        jdbc.update(DELETE_LIKES_BY_USER_QUERY, userId);
+        notifyListeners(listener -> filmIds.forEach(filmId -> listener.onLikeRemoved(filmId, userId)));
     }
 
     @Override
-    public List<Film> getDirectorFilmSortByLikes(Long directorId) {
-        return jdbc.query(GET_DIRECTOR_FILM_SORT_BY_LIKES, filmRowMapper, directorId);
+    public int reconcileLikeCounts() {
+        likeWriteBuffer.flush();
+        return jdbc.update(RECONCILE_LIKE_COUNT_QUERY);
     }
 
-    public List<Film> getFilmsByUserId(Long userId) {
-        return jdbc.query(GET_COMMON_FILMS_QUERY, filmRowMapper, userId);
+    @Override
+    public Boolean existById(Long id) {
+        return entityIds.films().contains(id);
     }
 
     @Override
     public void deleteFilmById(Long filmId) {
         if (existById(filmId)) {
+            likeWriteBuffer.flush();
+            // Отзывы о фильме удаляются каскадом, их id тоже убираем из множества
+            List<Long> reviewIds = jdbc.queryForList(GET_REVIEW_IDS_BY_FILM_QUERY, Long.class, filmId);
             if ((jdbc.update(DELETE_FILM_QUERY, filmId) == 1)) {
+                entityIds.films().remove(filmId);
+                entityIds.reviews().removeAll(reviewIds);
+                RequestMemo.evict("film:" + filmId);
                 log.info("Фильм с id = {} удален", filmId);
+                notifyListeners(listener -> listener.onFilmDeleted(filmId));
             }
         } else {
             throw new FilmNotFoundException(
@@ -489,4 +389,51 @@ public class FilmDbStorage implements FilmStorage {
             );
         }
     }
+
+    private Set<Integer> getGenreIds(Film film) {
+        if (film.getGenres() == null) {
+            return Set.of();
+        }
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<Long> getDirectorIds(Film film) {
+        if (film.getDirectors() == null) {
+            return Set.of();
+        }
+        return film.getDirectors().stream()
+                .map(Director::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private void validateGenres(Set<Integer> genreIds) {
+        if (!catalog.allGenresExist(genreIds)) {
+            throw new GenreNotExistException("Жанра который вы указали не существует");
+        }
+    }
+
+    private <T> Set<T> difference(Set<T> from, Set<T> subtract) {
+        Set<T> result = new LinkedHashSet<>(from);
+        result.removeAll(subtract);
+        return result;
+    }
+
+    private void batchUpdate(String sql, Long filmId, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate(sql, ids.stream()
+                .map(id -> new Object[]{filmId, id})
+                .collect(Collectors.toList()));
+    }
+
+    private List<Film> queryFilms(String sql, Object... args) {
+        return associationLoader.load(jdbc.query(sql, filmRowMapper, args));
+    }
+
+    private void notifyListeners(Consumer<FilmStorageListener> event) {
+        AfterCommit.run(() -> listeners.forEach(event));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.storage.film.FilmStorageImpl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.storage.film.LikeBitmapIndex;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+// Отложенная запись лайков: в буфере хранится только отличие от БД по паре (фильм, пользователь), лайк и его отмена
+// до сброса взаимно уничтожаются. Индексы в памяти обновляются сразу, поэтому чтения видят свои записи
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final LikeBitmapIndex likeBitmapIndex;
+
+    private static final String INSERT_LIKE_QUERY = """
+            INSERT INTO film_scope (user_id, film_id)
+            SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM film_scope WHERE user_id = ? AND film_id = ?)
+            """;
+    private static final String DELETE_LIKE_QUERY = "DELETE FROM film_scope WHERE user_id = ? AND film_id = ?";
+    private static final String RECOUNT_LIKES_QUERY = """
+            UPDATE films SET like_count = (SELECT COUNT(*) FROM film_scope fl WHERE fl.film_id = ?)
+            WHERE film_id = ?
+            """;
+
+    @Value("${filmorate.likes.write-behind.enabled:false}")
+    private boolean enabled;
+    @Value("${filmorate.likes.write-behind.batch-size:500}")
+    private int batchSize;
+    @Value("${filmorate.likes.write-behind.flush-interval:PT0.2S}")
+    private Duration flushInterval;
+
+    // true — лайк, которого еще нет в БД, false — удаление лайка, который в БД еще есть
+    private final Map<LikeKey, Boolean> pending = new ConcurrentHashMap<>();
+    // Изменения одной пары идут под одной из этих блокировок: проверка, правка буфера и уведомление индексов
+    // выполняются вместе, но не внутри блокировки ConcurrentHashMap
+    private final Object[] stripes = new Object[64];
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Свой поток: общий планировщик Spring однопоточный и занят пересчетами, сброс не должен их ждать
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "like-write-buffer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LikeWriteBuffer(JdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+                           LikeBitmapIndex likeBitmapIndex) {
+        this.jdbc = jdbc;
+        // Своя транзакция: сброс перед удалением пользователя или фильма не должен зависеть от внешней
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.likeBitmapIndex = likeBitmapIndex;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            long intervalMs = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::scheduledFlush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void like(long filmId, long userId, Runnable onChange) {
+        change(filmId, userId, true, onChange);
+    }
+
+    public void dislike(long filmId, long userId, Runnable onChange) {
+        change(filmId, userId, false, onChange);
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сброса буфера лайков", e);
+        }
+    }
+
+    // Записывает все накопленное к моменту вызова; вызывается и перед операциями, которым нужна актуальная БД
+    public synchronized int flush() {
+        int written = 0;
+        while (!pending.isEmpty()) {
+            List<LikeKey> added = new ArrayList<>();
+            List<LikeKey> removed = new ArrayList<>();
+            // Пара, измененная заново во время сброса, уходит в следующую пачку: в одной пачке вставки
+            // выполняются раньше удалений, и повторный лайк после отмены потерялся бы
+            Set<LikeKey> taken = new HashSet<>();
+            for (Map.Entry<LikeKey, Boolean> entry : pending.entrySet()) {
+                if (!taken.contains(entry.getKey()) && pending.remove(entry.getKey(), entry.getValue())) {
+                    taken.add(entry.getKey());
+                    (entry.getValue() ? added : removed).add(entry.getKey());
+                }
+                if (added.size() + removed.size() == batchSize) {
+                    break;
+                }
+            }
+            write(added, removed);
+            written += added.size() + removed.size();
+        }
+        if (written > 0) {
+            log.debug("Сброшено в БД {} изменений лайков", written);
+        }
+        return written;
+    }
+
+    @PreDestroy
+    public void drain() {
+        flusher.shutdown();
+        int written = flush();
+        log.info("Буфер лайков сброшен перед остановкой: {} изменений", written);
+    }
+
+    // Состояние пары меняется атомарно вместе с уведомлением индексов, поэтому параллельные лайки не задваиваются
+    private void change(long filmId, long userId, boolean liked, Runnable onChange) {
+        LikeKey key = new LikeKey(filmId, userId);
+        synchronized (stripes[Math.floorMod(key.hashCode(), stripes.length)]) {
+            if (likeBitmapIndex.hasLiked(filmId, userId) == liked) {
+                return;
+            }
+            // Противоположное изменение еще в буфере — оно отменяется, иначе запоминаем отличие от БД
+            if (!pending.remove(key, !liked)) {
+                pending.put(key, liked);
+            }
+            onChange.run();
+        }
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                scheduledFlush();
+            });
+        }
+    }
+
+    private void write(List<LikeKey> added, List<LikeKey> removed) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(added, removed));
+        } catch (DataAccessException e) {
+            // Например, фильм или пользователь удалены, пока лайк ждал записи: пишем по одному, пропуская такие
+            log.warn("Пакет лайков не записан целиком, повтор по одному: {}", e.getMessage());
+            added.forEach(key -> writeOne(List.of(key), List.of()));
+            removed.forEach(key -> writeOne(List.of(), List.of(key)));
+        }
+    }
+
+    private void writeOne(List<LikeKey> added, List<LikeKey> removed) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(added, removed));
+        } catch (DataAccessException e) {
+            log.warn("Изменение лайков {} {} не записано: {}", added, removed, e.getMessage());
+        }
+    }
+
+    private void writeBatch(List<LikeKey> added, List<LikeKey> removed) {
+        if (!added.isEmpty()) {
+            jdbc.batchUpdate(INSERT_LIKE_QUERY, added.stream()
+                    .map(key -> new Object[]{key.userId(), key.filmId(), key.userId(), key.filmId()})
+                    .toList());
+        }
+        if (!removed.isEmpty()) {
+            jdbc.batchUpdate(DELETE_LIKE_QUERY, removed.stream()
+                    .map(key -> new Object[]{key.userId(), key.filmId()})
+                    .toList());
+        }
+        jdbc.batchUpdate(RECOUNT_LIKES_QUERY, Stream.concat(added.stream(), removed.stream())
+                .map(LikeKey::filmId)
+                .distinct()
+                .map(filmId -> new Object[]{filmId, filmId})
+                .toList());
+    }
+
+    private record LikeKey(long filmId, long userId) {
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+// Уведомления об изменениях в хранилище фильмов, вызываются после фиксации транзакции
+public interface FilmStorageListener {
+    default void onFilmSaved(Film film) {
+    }
+
+    default void onFilmDeleted(Long filmId) {
+    }
+
+    default void onLikeAdded(Long filmId, Long userId) {
+    }
+
+    default void onLikeRemoved(Long filmId, Long userId) {
+    }
+}
@@ -0,0 +1,154 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Лайки как сжатые битовые множества: фильмы пользователя и пользователи фильма, операции без обращений к БД
+// Уведомляется о лайках первым: индексы, упорядоченные по лайкам, читают из него уже обновленное число
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class LikeBitmapIndex implements FilmStorageListener {
+    private final JdbcTemplate jdbc;
+
+    private static final String LOAD_LIKES_QUERY = "SELECT user_id, film_id FROM film_scope";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();
+
+    @PostConstruct
+    public void rebuild() {
+        State newState = new State();
+        jdbc.query(LOAD_LIKES_QUERY, rs -> {
+            newState.add(rs.getLong("user_id"), rs.getLong("film_id"));
+        });
+        lock.writeLock().lock();
+        try {
+            state = newState;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Битовый индекс лайков построен: {} пользователей, {} фильмов", newState.filmsByUser.size(),
+                newState.usersByFilm.size());
+    }
+
+    public boolean hasLiked(long filmId, long userId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap films = state.filmsByUser.get(userId);
+            return films != null && films.contains(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLikes(long filmId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap users = state.usersByFilm.get(filmId);
+            return users == null ? 0 : users.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Общие лайкнутые фильмы двух пользователей, от популярных к менее популярным
+    public List<Long> getCommonFilms(long userId, long otherUserId, int offset, int limit) {
+        long[] common;
+        long[] order;
+        lock.readLock().lock();
+        try {
+            RoaringBitmap films = state.filmsByUser.get(userId);
+            RoaringBitmap otherFilms = state.filmsByUser.get(otherUserId);
+            if (films == null || otherFilms == null) {
+                return List.of();
+            }
+            common = films.and(otherFilms).toArray();
+            // Число лайков со знаком минус в старших битах, позиция в младших: сортировка дает популярные первыми,
+            // при равенстве сохраняется возрастание id
+            order = new long[common.length];
+            for (int i = 0; i < common.length; i++) {
+                order[i] = (-state.usersByFilm.get(common[i]).cardinality() << 32) | i;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(order);
+        return Arrays.stream(order)
+                .skip(offset)
+                .limit(limit)
+                .mapToObj(key -> common[(int) key])
+                .toList();
+    }
+
+    @Override
+    public void onLikeAdded(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            state.add(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onLikeRemoved(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            state.remove(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap users = state.usersByFilm.remove(filmId);
+            if (users != null) {
+                for (long userId : users.toArray()) {
+                    state.remove(userId, filmId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class State {
+        private final Map<Long, RoaringBitmap> filmsByUser = new HashMap<>();
+        private final Map<Long, RoaringBitmap> usersByFilm = new HashMap<>();
+
+        private void add(long userId, long filmId) {
+            filmsByUser.computeIfAbsent(userId, id -> new RoaringBitmap()).add(filmId);
+            usersByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(userId);
+        }
+
+        private void remove(long userId, long filmId) {
+            removeFrom(filmsByUser, userId, filmId);
+            removeFrom(usersByFilm, filmId, userId);
+        }
+
+        private static void removeFrom(Map<Long, RoaringBitmap> bitmaps, long key, long value) {
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+}
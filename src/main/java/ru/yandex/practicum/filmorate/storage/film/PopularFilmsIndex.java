@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.Genre;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Рейтинг фильмов по лайкам в памяти: общий и по срезам жанр/год, без обращений к БД при чтении
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularFilmsIndex implements FilmStorageListener {
+    private final JdbcTemplate jdbc;
+    private final LikeBitmapIndex likeBitmapIndex;
+
+    private static final String LOAD_FILMS_QUERY = "SELECT film_id, EXTRACT(YEAR FROM release_date) AS release_year FROM films";
+    private static final String LOAD_FILM_GENRES_QUERY = "SELECT film_id, genre_id FROM film_genre";
+    private static final Comparator<Rank> RANK_ORDER = Comparator.comparingLong(Rank::likes).reversed()
+            .thenComparingLong(Rank::filmId);
+
+    // Изменения идут параллельно (структуры состояния потокобезопасны), чтение без блокировок
+    private final RebuildableState<State> state = new RebuildableState<>(new State(), false);
+
+    @PostConstruct
+    public void rebuild() {
+        int replayed = state.rebuild(this::load);
+        log.info("Индекс популярных фильмов построен: {} фильмов, повторено изменений во время сборки: {}",
+                state.read(current -> current.entries.size()), replayed);
+    }
+
+    public List<Long> getTop(int count, Integer genreId, Integer year) {
+        NavigableSet<Rank> ranks = state.read(current -> current.facets.get(new Facet(genreId, year)));
+        if (ranks == null) {
+            return List.of();
+        }
+        List<Long> filmIds = new ArrayList<>(Math.min(count, ranks.size()));
+        Iterator<Rank> iterator = ranks.iterator();
+        while (filmIds.size() < count && iterator.hasNext()) {
+            filmIds.add(iterator.next().filmId());
+        }
+        return filmIds;
+    }
+
+    // Все фильмы в порядке рейтинга; обход ленивый, вызывающий может остановиться на первых подходящих
+    public Iterable<Long> getRankedFilmIds() {
+        NavigableSet<Rank> ranks = state.read(current -> current.facets.get(new Facet(null, null)));
+        if (ranks == null) {
+            return List.of();
+        }
+        return () -> ranks.stream().map(Rank::filmId).iterator();
+    }
+
+    public long getLikes(Long filmId) {
+        Entry entry = state.read(current -> current.entries.get(filmId));
+        return entry == null ? 0 : entry.likes();
+    }
+
+    @Override
+    public void onFilmSaved(Film film) {
+        int[] genreIds = film.getGenres() == null ? new int[0] : film.getGenres().stream()
+                .map(Genre::getId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int year = film.getReleaseDate().getYear();
+        state.apply(current -> current.entries.compute(film.getId(), (filmId, old) -> {
+            if (old != null) {
+                current.removeRanks(old);
+            }
+            Entry entry = new Entry(filmId, likeBitmapIndex.getLikes(filmId), year, genreIds);
+            current.addRanks(entry);
+            return entry;
+        }));
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        state.apply(current -> current.entries.computeIfPresent(filmId, (id, old) -> {
+            current.removeRanks(old);
+            return null;
+        }));
+    }
+
+    @Override
+    public void onLikeAdded(Long filmId, Long userId) {
+        refreshLikes(filmId);
+    }
+
+    @Override
+    public void onLikeRemoved(Long filmId, Long userId) {
+        refreshLikes(filmId);
+    }
+
+    // Число лайков перечитывается из LikeBitmapIndex, который уведомляется раньше: повтор такого изменения
+    // после пересборки не учтет лайк второй раз
+    private void refreshLikes(Long filmId) {
+        state.apply(current -> current.entries.computeIfPresent(filmId, (id, old) -> {
+            long likes = likeBitmapIndex.getLikes(id);
+            if (likes == old.likes()) {
+                return old;
+            }
+            current.removeRanks(old);
+            Entry entry = new Entry(id, likes, old.year(), old.genreIds());
+            current.addRanks(entry);
+            return entry;
+        }));
+    }
+
+    private State load() {
+        Map<Long, Integer> years = new HashMap<>();
+        Map<Long, List<Integer>> genres = new HashMap<>();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            years.put(rs.getLong("film_id"), rs.getInt("release_year"));
+        });
+        jdbc.query(LOAD_FILM_GENRES_QUERY, rs -> {
+            genres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getInt("genre_id"));
+        });
+
+        State loaded = new State();
+        years.forEach((filmId, year) -> {
+            int[] genreIds = genres.getOrDefault(filmId, List.of()).stream().mapToInt(Integer::intValue).toArray();
+            Entry entry = new Entry(filmId, likeBitmapIndex.getLikes(filmId), year, genreIds);
+            loaded.entries.put(filmId, entry);
+            loaded.addRanks(entry);
+        });
+        return loaded;
+    }
+
+    private record Facet(Integer genreId, Integer year) {
+    }
+
+    private record Rank(long filmId, long likes) {
+    }
+
+    private record Entry(long filmId, long likes, int year, int[] genreIds) {
+        Rank rank() {
+            return new Rank(filmId, likes);
+        }
+
+        List<Facet> facets() {
+            List<Facet> facets = new ArrayList<>(2 + genreIds.length * 2);
+            facets.add(new Facet(null, null));
+            facets.add(new Facet(null, year));
+            for (int genreId : genreIds) {
+                facets.add(new Facet(genreId, null));
+                facets.add(new Facet(genreId, year));
+            }
+            return facets;
+        }
+    }
+
+    private static class State {
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<Facet, NavigableSet<Rank>> facets = new ConcurrentHashMap<>();
+
+        private void addRanks(Entry entry) {
+            Rank rank = entry.rank();
+            for (Facet facet : entry.facets()) {
+                facets.computeIfAbsent(facet, f -> new ConcurrentSkipListSet<>(RANK_ORDER)).add(rank);
+            }
+        }
+
+        private void removeRanks(Entry entry) {
+            Rank rank = entry.rank();
+            for (Facet facet : entry.facets()) {
+                NavigableSet<Rank> ranks = facets.get(facet);
+                if (ranks != null) {
+                    ranks.remove(rank);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Состояние индекса в памяти, которое можно пересобрать из БД без потери изменений, пришедших во время сборки:
+// такие изменения запоминаются и повторяются на новом состоянии перед заменой. Поэтому изменение должно задавать
+// значение целиком (например, перечитывать число лайков из LikeBitmapIndex), а не прибавлять разницу —
+// иначе уже прочитанное при сборке учтется второй раз
+final class RebuildableState<S> {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // true — изменения идут по одному под монопольной блокировкой, чтение под общей;
+    // false — состояние потокобезопасно само, изменения идут параллельно, чтение без блокировки
+    private final boolean exclusiveChanges;
+    private volatile S state;
+    private List<Consumer<S>> changesDuringRebuild;
+
+    RebuildableState(S initial, boolean exclusiveChanges) {
+        this.state = initial;
+        this.exclusiveChanges = exclusiveChanges;
+    }
+
+    <T> T read(Function<S, T> reader) {
+        if (!exclusiveChanges) {
+            return reader.apply(state);
+        }
+        lock.readLock().lock();
+        try {
+            return reader.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void apply(Consumer<S> change) {
+        Lock changeLock = exclusiveChanges ? lock.writeLock() : lock.readLock();
+        changeLock.lock();
+        try {
+            change.accept(state);
+            if (changesDuringRebuild != null) {
+                synchronized (changesDuringRebuild) {
+                    changesDuringRebuild.add(change);
+                }
+            }
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    // Возвращает число изменений, повторенных на новом состоянии; пересборки идут по одной
+    synchronized int rebuild(Supplier<S> loader) {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        S loaded = null;
+        int replayed = 0;
+        try {
+            loaded = loader.get();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (loaded != null) {
+                    replayed = changesDuringRebuild.size();
+                    for (Consumer<S> change : changesDuringRebuild) {
+                        change.accept(loaded);
+                    }
+                    state = loaded;
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return replayed;
+    }
+}
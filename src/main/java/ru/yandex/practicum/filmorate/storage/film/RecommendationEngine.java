@@ -0,0 +1,271 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Коллаборативная фильтрация по матрице лайков в памяти: соседи по мере Жаккара, их фильмы взвешиваются сходством
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecommendationEngine implements FilmStorageListener {
+    private final JdbcTemplate jdbc;
+
+    private static final String LOAD_LIKES_QUERY = "SELECT user_id, film_id FROM film_scope ORDER BY user_id, film_id";
+    private static final int NEIGHBOURS = 20;
+    private static final long[] NO_FILMS = new long[0];
+    private static final int[] NO_USERS = new int[0];
+    private static final Comparator<Candidate> CANDIDATE_ORDER = Comparator.comparingDouble(Candidate::score).reversed()
+            .thenComparing(Comparator.comparingInt(Candidate::likes).reversed())
+            .thenComparingLong(Candidate::filmId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Matrix matrix = new Matrix();
+    // Номер последнего изменения лайков пользователя, пока по нему не пересчитаны рекомендации
+    private final Map<Long, Long> likesChangedAt = new ConcurrentHashMap<>();
+    private final AtomicLong likesVersion = new AtomicLong();
+
+    @PostConstruct
+    public void rebuild() {
+        Matrix newMatrix = new Matrix();
+        int[] likes = {0};
+        jdbc.query(LOAD_LIKES_QUERY, rs -> {
+            newMatrix.add(rs.getLong("user_id"), rs.getLong("film_id"));
+            likes[0]++;
+        });
+        lock.writeLock().lock();
+        try {
+            matrix = newMatrix;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Матрица лайков для рекомендаций построена: {} пользователей, {} лайков", newMatrix.userCount, likes[0]);
+    }
+
+    public List<Long> recommend(long userId, int limit) {
+        List<Candidate> candidates;
+        lock.readLock().lock();
+        try {
+            candidates = matrix.candidates(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return candidates.stream()
+                .sorted(CANDIDATE_ORDER)
+                .limit(limit)
+                .map(Candidate::filmId)
+                .toList();
+    }
+
+    public long[] getUsersWithLikes() {
+        lock.readLock().lock();
+        try {
+            return matrix.usersWithLikes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Long> getStaleUsers() {
+        return Map.copyOf(likesChangedAt);
+    }
+
+    public Long getLikesChangedAt(long userId) {
+        return likesChangedAt.get(userId);
+    }
+
+    // Снимаем отметку, только если лайки не менялись, пока шел расчет
+    public void markComputed(long userId, Long changedAt) {
+        if (changedAt != null) {
+            likesChangedAt.remove(userId, changedAt);
+        }
+    }
+
+    @Override
+    public void onLikeAdded(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            matrix.add(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        likesChangedAt.put(userId, likesVersion.incrementAndGet());
+    }
+
+    @Override
+    public void onLikeRemoved(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            matrix.remove(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        likesChangedAt.put(userId, likesVersion.incrementAndGet());
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            matrix.removeFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private record Candidate(long filmId, double score, int likes) {
+    }
+
+    // Пользователи и фильмы получают плотные номера; лайки хранятся отсортированными массивами в обе стороны
+    private static class Matrix {
+        private final LongIntHashMap userIndex = new LongIntHashMap();
+        private final LongIntHashMap filmIndex = new LongIntHashMap();
+        private long[] userIds = new long[16];
+        private long[][] userLikes = new long[16][];
+        private int[][] filmLikers = new int[16][];
+        private int userCount;
+        private int filmCount;
+
+        private void add(long userId, long filmId) {
+            int user = userSlot(userId);
+            int film = filmSlot(filmId);
+            userLikes[user] = SortedArrays.insert(userLikes[user], filmId);
+            filmLikers[film] = SortedArrays.insert(filmLikers[film], user);
+        }
+
+        private void remove(long userId, long filmId) {
+            int user = userIndex.get(userId, -1);
+            int film = filmIndex.get(filmId, -1);
+            if (user < 0 || film < 0) {
+                return;
+            }
+            userLikes[user] = SortedArrays.remove(userLikes[user], filmId);
+            filmLikers[film] = SortedArrays.remove(filmLikers[film], user);
+        }
+
+        private void removeFilm(long filmId) {
+            int film = filmIndex.get(filmId, -1);
+            if (film < 0) {
+                return;
+            }
+            for (int user : filmLikers[film]) {
+                userLikes[user] = SortedArrays.remove(userLikes[user], filmId);
+            }
+            filmLikers[film] = NO_USERS;
+        }
+
+        private long[] usersWithLikes() {
+            long[] result = new long[userCount];
+            int count = 0;
+            for (int user = 0; user < userCount; user++) {
+                if (userLikes[user].length > 0) {
+                    result[count++] = userIds[user];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private List<Candidate> candidates(long userId) {
+            int user = userIndex.get(userId, -1);
+            if (user < 0 || userLikes[user].length == 0) {
+                return List.of();
+            }
+            long[] liked = userLikes[user];
+
+            LongIntHashMap overlaps = new LongIntHashMap();
+            for (long filmId : liked) {
+                for (int other : filmLikers[filmIndex.get(filmId, -1)]) {
+                    if (other != user) {
+                        overlaps.addTo(other, 1);
+                    }
+                }
+            }
+            if (overlaps.isEmpty()) {
+                return List.of();
+            }
+
+            // Сходство и номер соседа упакованы в long: положительный float сравнивается как int, сортировка без объектов
+            long[] ranked = new long[overlaps.size()];
+            int[] count = {0};
+            overlaps.forEach((other, common) -> {
+                float similarity = (float) common / (liked.length + userLikes[(int) other].length - common);
+                ranked[count[0]++] = ((long) Float.floatToIntBits(similarity) << 32) | other;
+            });
+            Arrays.sort(ranked);
+
+            LongIntHashMap slots = new LongIntHashMap();
+            long[] filmIds = new long[16];
+            double[] scores = new double[16];
+            int candidateCount = 0;
+            for (int i = ranked.length - 1; i >= Math.max(0, ranked.length - NEIGHBOURS); i--) {
+                int neighbour = (int) ranked[i];
+                float similarity = Float.intBitsToFloat((int) (ranked[i] >>> 32));
+                for (long filmId : userLikes[neighbour]) {
+                    if (SortedArrays.contains(liked, filmId)) {
+                        continue;
+                    }
+                    int slot = slots.get(filmId, -1);
+                    if (slot < 0) {
+                        slot = candidateCount++;
+                        slots.put(filmId, slot);
+                        if (slot == filmIds.length) {
+                            filmIds = Arrays.copyOf(filmIds, slot * 2);
+                            scores = Arrays.copyOf(scores, slot * 2);
+                        }
+                        filmIds[slot] = filmId;
+                    }
+                    scores[slot] += similarity;
+                }
+            }
+
+            List<Candidate> candidates = new ArrayList<>(candidateCount);
+            for (int slot = 0; slot < candidateCount; slot++) {
+                int likes = filmLikers[filmIndex.get(filmIds[slot], -1)].length;
+                candidates.add(new Candidate(filmIds[slot], scores[slot], likes));
+            }
+            return candidates;
+        }
+
+        private int userSlot(long userId) {
+            int slot = userIndex.get(userId, -1);
+            if (slot < 0) {
+                slot = userCount++;
+                userIndex.put(userId, slot);
+                if (slot == userLikes.length) {
+                    userIds = Arrays.copyOf(userIds, slot * 2);
+                    userLikes = Arrays.copyOf(userLikes, slot * 2);
+                }
+                userIds[slot] = userId;
+                userLikes[slot] = NO_FILMS;
+            }
+            return slot;
+        }
+
+        private int filmSlot(long filmId) {
+            int slot = filmIndex.get(filmId, -1);
+            if (slot < 0) {
+                slot = filmCount++;
+                filmIndex.put(filmId, slot);
+                if (slot == filmLikers.length) {
+                    filmLikers = Arrays.copyOf(filmLikers, slot * 2);
+                }
+                filmLikers[slot] = NO_USERS;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+// Стеммер Snowball для русского языка: отрезает окончания в зонах RV и R2 по шагам оригинального алгоритма
+final class RussianStemmer {
+    private static final String VOWELS = "аеиоуыэюя";
+
+    private static final String[] PERFECTIVE_GERUND_1 = {"в", "вши", "вшись"};
+    private static final String[] PERFECTIVE_GERUND_2 = {"ив", "ивши", "ившись", "ыв", "ывши", "ывшись"};
+    private static final String[] REFLEXIVE = {"ся", "сь"};
+    private static final String[] ADJECTIVE = {"ее", "ие", "ые", "ое", "ими", "ыми", "ей", "ий", "ый", "ой", "ем",
+            "им", "ым", "ом", "его", "ого", "ему", "ому", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею"};
+    private static final String[] PARTICIPLE_1 = {"ем", "нн", "вш", "ющ", "щ"};
+    private static final String[] PARTICIPLE_2 = {"ивш", "ывш", "ующ"};
+    private static final String[] VERB_1 = {"ла", "на", "ете", "йте", "ли", "й", "л", "ем", "н", "ло", "но", "ет",
+            "ют", "ны", "ть", "ешь", "нно"};
+    private static final String[] VERB_2 = {"ила", "ыла", "ена", "ейте", "уйте", "ите", "или", "ыли", "ей", "уй",
+            "ил", "ыл", "им", "ым", "ен", "ило", "ыло", "ено", "ят", "ует", "уют", "ит", "ыт", "ены", "ить", "ыть",
+            "ишь", "ую", "ю"};
+    private static final String[] NOUN = {"а", "ев", "ов", "ие", "ье", "е", "иями", "ями", "ами", "еи", "ии", "и",
+            "ией", "ей", "ой", "ий", "й", "иям", "ям", "ием", "ем", "ам", "ом", "о", "у", "ах", "иях", "ях", "ы", "ь",
+            "ию", "ью", "ю", "ия", "ья", "я"};
+    private static final String[] DERIVATIONAL = {"ост", "ость"};
+    private static final String[] SUPERLATIVE = {"ейш", "ейше"};
+
+    private RussianStemmer() {
+    }
+
+    static String stem(String word) {
+        StringBuilder sb = new StringBuilder(word);
+        int rv = word.length();
+        int r2 = word.length();
+        int i = 0;
+        while (i < word.length() && !isVowel(word.charAt(i))) {
+            i++;
+        }
+        if (i < word.length()) {
+            rv = i + 1;
+            int r1 = pastConsonantAfterVowel(word, i);
+            r2 = pastConsonantAfterVowel(word, r1);
+        }
+        if (rv >= word.length()) {
+            return word;
+        }
+
+        if (!removeGrouped(sb, rv, PERFECTIVE_GERUND_1, PERFECTIVE_GERUND_2)) {
+            removeSuffix(sb, rv, REFLEXIVE);
+            if (removeSuffix(sb, rv, ADJECTIVE)) {
+                removeGrouped(sb, rv, PARTICIPLE_1, PARTICIPLE_2);
+            } else if (!removeGrouped(sb, rv, VERB_1, VERB_2)) {
+                removeSuffix(sb, rv, NOUN);
+            }
+        }
+
+        if (endsWith(sb, rv, "и")) {
+            sb.setLength(sb.length() - 1);
+        }
+
+        removeSuffix(sb, r2, DERIVATIONAL);
+
+        if (endsWith(sb, rv, "нн")) {
+            sb.setLength(sb.length() - 1);
+        } else if (removeSuffix(sb, rv, SUPERLATIVE)) {
+            if (endsWith(sb, rv, "нн")) {
+                sb.setLength(sb.length() - 1);
+            }
+        } else if (endsWith(sb, rv, "ь")) {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    // Позиция после первой согласной, идущей за гласной не раньше from; длина слова, если такой нет
+    private static int pastConsonantAfterVowel(String word, int from) {
+        int i = from;
+        while (i < word.length() && !isVowel(word.charAt(i))) {
+            i++;
+        }
+        while (i < word.length() && isVowel(word.charAt(i))) {
+            i++;
+        }
+        return i < word.length() ? i + 1 : word.length();
+    }
+
+    // Окончания первой группы срезаются, только если перед ними стоит «а» или «я» внутри RV
+    private static boolean removeGrouped(StringBuilder sb, int limit, String[] afterAOrYa, String[] plain) {
+        String first = longestSuffix(sb, limit, afterAOrYa);
+        String second = longestSuffix(sb, limit, plain);
+        if (second != null && (first == null || second.length() >= first.length())) {
+            sb.setLength(sb.length() - second.length());
+            return true;
+        }
+        if (first != null) {
+            int before = sb.length() - first.length() - 1;
+            if (before >= limit && (sb.charAt(before) == 'а' || sb.charAt(before) == 'я')) {
+                sb.setLength(sb.length() - first.length());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean removeSuffix(StringBuilder sb, int limit, String[] suffixes) {
+        String suffix = longestSuffix(sb, limit, suffixes);
+        if (suffix == null) {
+            return false;
+        }
+        sb.setLength(sb.length() - suffix.length());
+        return true;
+    }
+
+    private static String longestSuffix(StringBuilder sb, int limit, String[] suffixes) {
+        String longest = null;
+        for (String suffix : suffixes) {
+            if ((longest == null || suffix.length() > longest.length()) && endsWith(sb, limit, suffix)) {
+                longest = suffix;
+            }
+        }
+        return longest;
+    }
+
+    private static boolean endsWith(StringBuilder sb, int limit, String suffix) {
+        int start = sb.length() - suffix.length();
+        return start >= limit && sb.indexOf(suffix, start) == start;
+    }
+
+    private static boolean isVowel(char c) {
+        return VOWELS.indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,224 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorageListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongFunction;
+
+// Подсказки при наборе: отсортированные слова названий, поиск диапазоном по префиксу, а для коротких префиксов
+// с множеством совпадений — обход записей в порядке ранжирования до первых limit подходящих
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SuggestIndex implements FilmStorageListener, DirectorStorageListener {
+    private final JdbcTemplate jdbc;
+    private final PopularFilmsIndex popularFilmsIndex;
+
+    private static final String LOAD_FILMS_QUERY = "SELECT film_id, title FROM films";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT director_id, name FROM director";
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::text).thenComparingLong(Key::id);
+    // Фильмы в порядке рейтинга PopularFilmsIndex, режиссеры — по имени: так обход по рейтингу
+    // дает тот же результат, что и ранжирование всего диапазона
+    private static final Comparator<Match> FILM_ORDER = Comparator.comparingLong(Match::likes).reversed()
+            .thenComparingLong(Match::id);
+    private static final Comparator<Match> DIRECTOR_ORDER = Comparator.comparing(Match::name)
+            .thenComparingLong(Match::id);
+
+    @Value("${filmorate.suggest.scan-limit:1000}")
+    private int scanLimit;
+
+    private volatile PrefixIndex films = new PrefixIndex();
+    private volatile PrefixIndex directors = new PrefixIndex();
+
+    @PostConstruct
+    public void rebuild() {
+        PrefixIndex newFilms = new PrefixIndex();
+        PrefixIndex newDirectors = new PrefixIndex();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            newFilms.put(rs.getLong("film_id"), rs.getString("title"));
+        });
+        jdbc.query(LOAD_DIRECTORS_QUERY, rs -> {
+            newDirectors.put(rs.getLong("director_id"), rs.getString("name"));
+        });
+        films = newFilms;
+        directors = newDirectors;
+        log.info("Индекс подсказок построен: {} фильмов, {} режиссеров", newFilms.entries.size(),
+                newDirectors.entries.size());
+    }
+
+    public List<Suggestion> suggestFilms(String prefix, int limit) {
+        PrefixIndex index = films;
+        return top(index.matches(prefix, limit, scanLimit, popularFilmsIndex.getRankedFilmIds()),
+                id -> new Match(id, index.name(id), popularFilmsIndex.getLikes(id)), FILM_ORDER, limit);
+    }
+
+    public List<Suggestion> suggestDirectors(String prefix, int limit) {
+        PrefixIndex index = directors;
+        return top(index.matches(prefix, limit, scanLimit, index.byName()), id -> new Match(id, index.name(id), 0),
+                DIRECTOR_ORDER, limit);
+    }
+
+    @Override
+    public void onFilmSaved(Film film) {
+        films.put(film.getId(), film.getTitle());
+    }
+
+    @Override
+    public void onFilmDeleted(Long filmId) {
+        films.remove(filmId);
+    }
+
+    @Override
+    public void onDirectorSaved(Director director) {
+        directors.put(director.getId(), director.getName());
+    }
+
+    @Override
+    public void onDirectorDeleted(Long directorId) {
+        directors.remove(directorId);
+    }
+
+    // В куче держится не больше limit лучших совпадений
+    private static List<Suggestion> top(Set<Long> ids, LongFunction<Match> toMatch, Comparator<Match> order,
+                                        int limit) {
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, order.reversed());
+        for (long id : ids) {
+            best.add(toMatch.apply(id));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(order);
+        return ranked.stream()
+                .map(match -> new Suggestion(match.id(), match.name()))
+                .toList();
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", SearchTokenizer.words(text));
+    }
+
+    private record Key(String text, long id) {
+    }
+
+    // Нормализованное название хранится один раз, ключи — по одному на слово
+    private record Entry(String name, String text, List<Key> keys) {
+        // Одно из слов начинается с prefix, а для префикса из нескольких слов — подряд идущие слова
+        boolean matches(String prefix) {
+            return text.startsWith(prefix) || text.contains(" " + prefix);
+        }
+    }
+
+    // Лайки запоминаются один раз, чтобы порядок в куче не менялся от параллельных лайков
+    private record Match(long id, String name, long likes) {
+    }
+
+    private static class PrefixIndex {
+        private final NavigableSet<Key> keys = new ConcurrentSkipListSet<>(KEY_ORDER);
+        private final NavigableSet<Key> names = new ConcurrentSkipListSet<>(KEY_ORDER);
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+        private void put(long id, String name) {
+            entries.compute(id, (key, old) -> {
+                if (old != null) {
+                    removeKeys(id, old);
+                }
+                String text = normalize(name);
+                Entry entry = new Entry(name, text, keysOf(id, text));
+                keys.addAll(entry.keys());
+                names.add(new Key(name, id));
+                return entry;
+            });
+        }
+
+        private void remove(long id) {
+            entries.computeIfPresent(id, (key, old) -> {
+                removeKeys(id, old);
+                return null;
+            });
+        }
+
+        private void removeKeys(long id, Entry entry) {
+            entry.keys().forEach(keys::remove);
+            names.remove(new Key(entry.name(), id));
+        }
+
+        // Id записей, подходящих под prefix. Диапазон ключей просматривается, пока в нем не больше scanLimit
+        // ключей; иначе совпадений много, и записи обходятся в порядке ranked до limit подходящих
+        private Set<Long> matches(String prefix, int limit, int scanLimit, Iterable<Long> ranked) {
+            String normalized = normalize(prefix);
+            if (normalized.isEmpty()) {
+                return Set.of();
+            }
+            int space = normalized.indexOf(' ');
+            // Слово перед пробелом уже набрано целиком, последнее может быть начато
+            NavigableSet<Key> range = space < 0
+                    ? keys.subSet(new Key(normalized, Long.MIN_VALUE), true,
+                    new Key(normalized + Character.MAX_VALUE, Long.MIN_VALUE), false)
+                    : keys.subSet(new Key(normalized.substring(0, space), Long.MIN_VALUE), true,
+                    new Key(normalized.substring(0, space), Long.MAX_VALUE), true);
+            Set<Long> ids = new HashSet<>();
+            int scanned = 0;
+            for (Key key : range) {
+                if (++scanned > scanLimit) {
+                    return firstMatches(normalized, limit, ranked);
+                }
+                Entry entry = entries.get(key.id());
+                if (entry != null && (space < 0 || entry.matches(normalized))) {
+                    ids.add(key.id());
+                }
+            }
+            return ids;
+        }
+
+        private Set<Long> firstMatches(String normalized, int limit, Iterable<Long> ranked) {
+            Set<Long> ids = new HashSet<>();
+            for (Long id : ranked) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.matches(normalized)) {
+                    ids.add(id);
+                    if (ids.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return ids;
+        }
+
+        private Iterable<Long> byName() {
+            return () -> names.stream().map(Key::id).iterator();
+        }
+
+        private String name(long id) {
+            Entry entry = entries.get(id);
+            return entry == null ? "" : entry.name();
+        }
+
+        // Ключ на каждое различное слово, чтобы «тарк» находил и «Андрей Тарковский»
+        private static List<Key> keysOf(long id, String text) {
+            Set<String> words = new TreeSet<>(List.of(text.split(" ")));
+            words.remove("");
+            return words.stream().map(word -> new Key(word, id)).toList();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public interface RecommendationStorage {
+    List<Long> getRecommendedFilmIds(Long userId);
+
+    void saveRecommendations(Map<Long, List<Long>> filmIdsByUser, Instant computedAt);
+}
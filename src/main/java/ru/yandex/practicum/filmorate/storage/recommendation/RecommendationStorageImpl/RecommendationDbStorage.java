@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage.recommendation.RecommendationStorageImpl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationStorage;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+public class RecommendationDbStorage implements RecommendationStorage {
+    private final JdbcTemplate jdbc;
+
+    private static final String GET_FILM_IDS_QUERY =
+            "SELECT film_id FROM user_recommendation WHERE user_id = ? ORDER BY position";
+    private static final String DELETE_QUERY = "DELETE FROM user_recommendation WHERE user_id = ?";
+    private static final String INSERT_QUERY =
+            "INSERT INTO user_recommendation (user_id, position, film_id) VALUES (?, ?, ?)";
+    private static final String MERGE_STATE_QUERY =
+            "MERGE INTO user_recommendation_state (user_id, computed_at) KEY (user_id) VALUES (?, ?)";
+
+    @Override
+    public List<Long> getRecommendedFilmIds(Long userId) {
+        return jdbc.queryForList(GET_FILM_IDS_QUERY, Long.class, userId);
+    }
+
+    @Override
+    @Transactional
+    public void saveRecommendations(Map<Long, List<Long>> filmIdsByUser, Instant computedAt) {
+        if (filmIdsByUser.isEmpty()) {
+            return;
+        }
+        List<Object[]> users = new ArrayList<>(filmIdsByUser.size());
+        List<Object[]> states = new ArrayList<>(filmIdsByUser.size());
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp timestamp = Timestamp.from(computedAt);
+        filmIdsByUser.forEach((userId, filmIds) -> {
+            users.add(new Object[]{userId});
+            states.add(new Object[]{userId, timestamp});
+            for (int position = 0; position < filmIds.size(); position++) {
+                rows.add(new Object[]{userId, position, filmIds.get(position)});
+            }
+        });
+        jdbc.batchUpdate(DELETE_QUERY, users);
+        if (!rows.isEmpty()) {
+            jdbc.batchUpdate(INSERT_QUERY, rows);
+        }
+        jdbc.batchUpdate(MERGE_STATE_QUERY, states);
+    }
+}
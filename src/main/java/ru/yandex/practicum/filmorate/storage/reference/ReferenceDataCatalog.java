@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.storage.reference;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.Genre;
+import ru.yandex.practicum.filmorate.dto.Mpa;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+// Справочники жанров и рейтингов загружаются один раз в неизменяемые массивы по id; обновляются только через reload
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCatalog {
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+
+    private volatile Names genres = new Names(new String[0]);
+    private volatile Names ratings = new Names(new String[0]);
+
+    @PostConstruct
+    public void reload() {
+        List<Genre> genreRows = genreStorage.getAllGenre();
+        List<Mpa> mpaRows = mpaStorage.getAllMpa();
+        String[] genreNames = new String[genreRows.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+        genreRows.forEach(genre -> genreNames[genre.getId()] = genre.getName());
+        String[] ratingNames = new String[mpaRows.stream().mapToInt(Mpa::getId).max().orElse(0) + 1];
+        mpaRows.forEach(mpa -> ratingNames[mpa.getId()] = mpa.getName());
+        genres = new Names(genreNames);
+        ratings = new Names(ratingNames);
+        log.info("Справочники загружены: {} жанров, {} рейтингов", genreRows.size(), mpaRows.size());
+    }
+
+    public Optional<Genre> findGenre(long genreId) {
+        return genres.get(genreId).map(name -> new Genre((int) genreId, name));
+    }
+
+    public boolean genreExists(long genreId) {
+        return genres.contains(genreId);
+    }
+
+    public boolean allGenresExist(Collection<Integer> genreIds) {
+        Names names = genres;
+        return genreIds.stream().allMatch(names::contains);
+    }
+
+    public List<Genre> getGenres() {
+        Names names = genres;
+        return names.ids()
+                .mapToObj(id -> new Genre(id, names.values[id]))
+                .toList();
+    }
+
+    public Optional<Mpa> findMpa(long mpaId) {
+        return ratings.get(mpaId).map(name -> new Mpa((int) mpaId, name));
+    }
+
+    public boolean mpaExists(long mpaId) {
+        return ratings.contains(mpaId);
+    }
+
+    public List<Mpa> getRatings() {
+        Names names = ratings;
+        return names.ids()
+                .mapToObj(id -> new Mpa(id, names.values[id]))
+                .toList();
+    }
+
+    // Названия по id, пустые ячейки — отсутствующие id; наружу отдаются только копии в виде DTO
+    private static final class Names {
+        private final String[] values;
+
+        private Names(String[] values) {
+            this.values = values;
+        }
+
+        private boolean contains(long id) {
+            return id >= 0 && id < values.length && values[(int) id] != null;
+        }
+
+        private Optional<String> get(long id) {
+            return contains(id) ? Optional.of(values[(int) id]) : Optional.empty();
+        }
+
+        private IntStream ids() {
+            return IntStream.range(0, values.length).filter(id -> values[id] != null);
+        }
+    }
+}
@@ -28,4 +28,11 @@ public interface ReviewStorage {
     void deleteDislikeFromReview(Long reviewId, Long userId);
 
     Long getUserIdFromReview(Long reviewId);
+
+    // Снимает голоса пользователя с полезности отзывов и удаляет их
+    void revokeVotesByUser(Long userId);
+
+    void deleteByUser(Long userId);
+
+    int reconcileUseful();
 }
@@ -4,7 +4,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.EntityIds;
+import ru.yandex.practicum.filmorate.storage.RequestMemo;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
 import java.sql.PreparedStatement;
@@ -15,74 +18,54 @@ import java.util.List;
 public class ReviewDbStorage implements ReviewStorage {
     private final JdbcTemplate jdbc;
     private final ReviewRowMapper rowMapper;
+    private final EntityIds entityIds;
 
 
     private static final String CREATE_REVIEW_QUERY =
             "INSERT INTO review (content, positive, user_id, film_id) VALUES (?, ?, ?, ?)";
-    private static final String EXIST_BY_ID_QUERY =
-            "SELECT COUNT(*) > 0 FROM review WHERE review_id = ?";
     private static final String UPDATE_QUERY = "UPDATE review SET CONTENT = ?, positive = ? where  review_id = ?";
     private static final String GET_BY_ID = """
-            SELECT
-                r.review_id,
-                r.content,
-                r.positive,
-                r.user_id,
-                r.film_id,
-                COALESCE(SUM(CASE
-                    WHEN rs.isPositive = TRUE THEN 1
-                    WHEN rs.isPositive = FALSE THEN -1
-                    ELSE 0
-                END), 0) AS usefull
-            FROM
-                review r
-            LEFT JOIN
-                review_score rs ON r.review_id = rs.review_id
-            WHERE
-                r.review_id = ?
-            GROUP BY
-                r.review_id, r.content, r.positive, r.user_id, r.film_id
+            SELECT review_id, content, positive, user_id, film_id, useful AS usefull
+            FROM review
+            WHERE review_id = ?
             """;
+    // Первые count отзывов читаются прямо из индекса по (useful DESC, review_id)
     private static final String GET_ALL_WITH_LIMIT_QUERY = """
-            SELECT r.review_id,
-                   r.content,
-                   r.positive,
-                   r.user_id,
-                   r.film_id,
-                   COALESCE(SUM(CASE
-                        WHEN rs.isPositive = TRUE THEN 1
-                        WHEN rs.isPositive = FALSE THEN -1
-                        ELSE 0
-                        END), 0) AS usefull
-                   FROM
-                       review r
-                   LEFT JOIN
-                       review_score rs ON r.review_id = rs.review_id
-                   GROUP BY
-                       r.review_id, r.content, r.positive, r.user_id, r.film_id
-                   ORDER BY usefull DESC ,r.review_id ASC
-                   LIMIT ?
+            SELECT review_id, content, positive, user_id, film_id, useful AS usefull
+            FROM review
+            ORDER BY useful DESC, review_id ASC
+            LIMIT ?
             """;
 
+    // film_id в ORDER BY не меняет порядок, но позволяет H2 читать строки уже отсортированными
+    // из индекса (film_id, useful DESC, review_id)
     private static final String GET_ALL_WITH_LIMIT_AND_FILM_ID_QUERY = """
-            SELECT r.review_id,
-                   r.content,
-                   r.positive,
-                   r.user_id,
-                   r.film_id,
-                   COALESCE(SUM(CASE
-                        WHEN rs.isPositive = TRUE THEN 1
-                        WHEN rs.isPositive = FALSE THEN -1
-                        ELSE 0
-                   END), 0) AS usefull
-            FROM review r
-            LEFT JOIN review_score rs ON r.review_id = rs.review_id
-            WHERE r.film_id = ?
-            GROUP BY r.review_id, r.content, r.positive, r.user_id, r.film_id
-            ORDER BY usefull DESC ,r.review_id ASC
+            SELECT review_id, content, positive, user_id, film_id, useful AS usefull
+            FROM review
+            WHERE film_id = ?
+            ORDER BY film_id, useful DESC, review_id ASC
             LIMIT ?
             """;
 
+    // Все голоса за отзыв идут друг за другом: сначала блокируется строка отзыва
+    private static final String LOCK_REVIEW_QUERY = "SELECT review_id FROM review WHERE review_id = ? FOR UPDATE";
+    // Разница между новым голосом (+1 или -1) и прежним голосом пользователя, если он был
+    private static final String APPLY_VOTE_QUERY = """
+            UPDATE review SET useful = useful + ? - COALESCE((
+                SELECT CASE WHEN isPositive THEN 1 ELSE -1 END
+                FROM review_score
+                WHERE review_id = ? AND user_id = ?), 0)
+            WHERE review_id = ?
+            """;
+    private static final String ADD_TO_USEFUL_QUERY = "UPDATE review SET useful = useful + ? WHERE review_id = ?";
+    private static final String RECONCILE_USEFUL_QUERY = """
+            UPDATE review r
+            SET useful = (SELECT COALESCE(SUM(CASE WHEN rs.isPositive THEN 1 ELSE -1 END), 0)
+                          FROM review_score rs WHERE rs.review_id = r.review_id)
+            WHERE useful <> (SELECT COALESCE(SUM(CASE WHEN rs.isPositive THEN 1 ELSE -1 END), 0)
+                             FROM review_score rs WHERE rs.review_id = r.review_id)
+            """;
+
     private static final String ADD_LIKE_QUERY = """
             MERGE INTO review_score (review_id, user_id, isPositive)
             KEY (review_id, user_id)
@@ -104,6 +87,17 @@ public class ReviewDbStorage implements ReviewStorage {
             """;
 
     private static final String DELETE_BY_ID_QUERY = "DELETE FROM review WHERE review_id = ?";
+    // Перед удалением голосов пользователя снимаем их с полезности отзывов
+    private static final String REVOKE_VOTES_BY_USER_QUERY = """
+            UPDATE review r
+            SET useful = useful - (SELECT CASE WHEN rs.isPositive THEN 1 ELSE -1 END
+                                   FROM review_score rs WHERE rs.review_id = r.review_id AND rs.user_id = ?)
+            WHERE r.review_id IN (SELECT review_id FROM review_score WHERE user_id = ?)
+            """;
+    private static final String GET_IDS_BY_VOTER_QUERY = "SELECT review_id FROM review_score WHERE user_id = ?";
+    private static final String DELETE_VOTES_BY_USER_QUERY = "DELETE FROM review_score WHERE user_id = ?";
+    private static final String GET_IDS_BY_USER_QUERY = "SELECT review_id FROM review WHERE user_id = ?";
+    private static final String DELETE_BY_USER_QUERY = "DELETE FROM review WHERE user_id = ?";
 
     private static final String GET_USER_ID_FROM_REVIEW_QUERY = "Select user_id from review WHERE review_id = ?";
 
@@ -120,13 +114,13 @@ public class ReviewDbStorage implements ReviewStorage {
             return ps;
         }, keyHolder);
         review.setReviewId((Long) keyHolder.getKey());
+        entityIds.reviews().add(review.getReviewId());
         return review;
     }
 
     @Override
     public Boolean existById(Long reviewId) {
-        Boolean check = jdbc.queryForObject(EXIST_BY_ID_QUERY, Boolean.class, reviewId);
-        return check;
+        return entityIds.reviews().contains(reviewId);
     }
 
     @Override
@@ -135,17 +129,20 @@ public class ReviewDbStorage implements ReviewStorage {
                 review.getContent(),
                 review.getIsPositive(),
                 review.getReviewId());
+        evict(review.getReviewId());
         return find(review.getReviewId());
     }
 
     @Override
     public Review find(Long reviewId) {
-        return jdbc.queryForObject(GET_BY_ID, rowMapper, reviewId);
+        return RequestMemo.get("review:" + reviewId, () -> jdbc.queryForObject(GET_BY_ID, rowMapper, reviewId));
     }
 
     @Override
     public void delete(Long reviewId) {
         jdbc.update(DELETE_BY_ID_QUERY, reviewId);
+        entityIds.reviews().remove(reviewId);
+        evict(reviewId);
     }
 
     @Override
@@ -160,27 +157,70 @@ public class ReviewDbStorage implements ReviewStorage {
     }
 
     @Override
+    @Transactional
     public void addLikeToReview(Long reviewId, Long userId) {
+        jdbc.queryForList(LOCK_REVIEW_QUERY, Long.class, reviewId);
+        jdbc.update(APPLY_VOTE_QUERY, 1, reviewId, userId, reviewId);
         jdbc.update(ADD_LIKE_QUERY, reviewId, userId);
+        evict(reviewId);
     }
 
-
+    @Override
+    @Transactional
     public void addDislikeToReview(Long reviewId, Long userId) {
+        jdbc.queryForList(LOCK_REVIEW_QUERY, Long.class, reviewId);
+        jdbc.update(APPLY_VOTE_QUERY, -1, reviewId, userId, reviewId);
         jdbc.update(ADD_DISLIKE_QUERY, reviewId, userId);
+        evict(reviewId);
     }
 
     @Override
+    @Transactional
     public void deleteLikeFromReview(Long reviewId, Long userId) {
-        jdbc.update(DELETE_LIKE_QUERY, reviewId, userId);
+        jdbc.queryForList(LOCK_REVIEW_QUERY, Long.class, reviewId);
+        if (jdbc.update(DELETE_LIKE_QUERY, reviewId, userId) > 0) {
+            jdbc.update(ADD_TO_USEFUL_QUERY, -1, reviewId);
+        }
+        evict(reviewId);
     }
 
     @Override
+    @Transactional
     public void deleteDislikeFromReview(Long reviewId, Long userId) {
-        jdbc.update(DELETE_DISLIKE_QUERY, reviewId, userId);
+        jdbc.queryForList(LOCK_REVIEW_QUERY, Long.class, reviewId);
+        if (jdbc.update(DELETE_DISLIKE_QUERY, reviewId, userId) > 0) {
+            jdbc.update(ADD_TO_USEFUL_QUERY, 1, reviewId);
+        }
+        evict(reviewId);
+    }
+
+    @Override
+    public void revokeVotesByUser(Long userId) {
+        List<Long> reviewIds = jdbc.queryForList(GET_IDS_BY_VOTER_QUERY, Long.class, userId);
+        jdbc.update(REVOKE_VOTES_BY_USER_QUERY, userId, userId);
+        jdbc.update(DELETE_VOTES_BY_USER_QUERY, userId);
+        reviewIds.forEach(this::evict);
+    }
+
+    @Override
+    public void deleteByUser(Long userId) {
+        List<Long> reviewIds = jdbc.queryForList(GET_IDS_BY_USER_QUERY, Long.class, userId);
+        jdbc.update(DELETE_BY_USER_QUERY, userId);
+        entityIds.reviews().removeAll(reviewIds);
+        reviewIds.forEach(this::evict);
+    }
+
+    @Override
+    public int reconcileUseful() {
+        return jdbc.update(RECONCILE_USEFUL_QUERY);
     }
 
     @Override
     public Long getUserIdFromReview(Long reviewId) {
         return jdbc.queryForObject(GET_USER_ID_FROM_REVIEW_QUERY, Long.class, reviewId);
     }
+
+    private void evict(Long reviewId) {
+        RequestMemo.evict("review:" + reviewId);
+    }
 }
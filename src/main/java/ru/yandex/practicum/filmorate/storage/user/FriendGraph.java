@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Граф дружбы в памяти: для каждого пользователя отсортированные массивы id друзей и тех, у кого он в друзьях.
+// Строка (a, b) таблицы friends означает, что b в друзьях у a.
+// Массивы не изменяются на месте, поэтому их можно отдавать наружу без копирования
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FriendGraph {
+    private final JdbcTemplate jdbc;
+
+    private static final String LOAD_FRIENDS_QUERY = "SELECT user_id, friend_id FROM friends";
+    private static final String GET_PAIR_QUERY = """
+            SELECT user_id FROM friends
+            WHERE (user_id = ? AND friend_id = ?) OR (user_id = ? AND friend_id = ?)
+            """;
+    private static final long[] EMPTY = new long[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, long[]> friends = new HashMap<>();
+    private Map<Long, long[]> followers = new HashMap<>();
+    private final List<FriendGraphListener> listeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, long[]> loadedFriends = new HashMap<>();
+        Map<Long, long[]> loadedFollowers = new HashMap<>();
+        jdbc.query(LOAD_FRIENDS_QUERY, rs -> {
+            link(loadedFriends, loadedFollowers, rs.getLong("user_id"), rs.getLong("friend_id"));
+        });
+        lock.writeLock().lock();
+        try {
+            friends = loadedFriends;
+            followers = loadedFollowers;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Граф дружбы загружен: {} пользователей с друзьями", loadedFriends.size());
+    }
+
+    public void addListener(FriendGraphListener listener) {
+        listeners.add(listener);
+    }
+
+    // Id друзей пользователя по возрастанию
+    public long[] friendIds(long userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Id пользователей, у которых он в друзьях, по возрастанию
+    public long[] followerIds(long userId) {
+        lock.readLock().lock();
+        try {
+            return followers.getOrDefault(userId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] commonFriendIds(long userId, long otherUserId) {
+        return SortedArrays.intersect(friendIds(userId), friendIds(otherUserId));
+    }
+
+    public int mutualFriendCount(long userId, long otherUserId) {
+        return SortedArrays.intersectionSize(friendIds(userId), friendIds(otherUserId));
+    }
+
+    // Перечитывает строки пары из БД (в текущей транзакции) и применяет их после коммита
+    public void refreshPair(long userId, long friendId) {
+        boolean[] edges = new boolean[2];
+        jdbc.query(GET_PAIR_QUERY, rs -> {
+            edges[rs.getLong("user_id") == userId ? 0 : 1] = true;
+        }, userId, friendId, friendId, userId);
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                setEdge(userId, friendId, edges[0]);
+                setEdge(friendId, userId, edges[1]);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            notifyChanged(userId, friendId);
+            notifyChanged(friendId, userId);
+        });
+    }
+
+    public void removeUser(long userId) {
+        AfterCommit.run(() -> {
+            long[] removedFriends;
+            long[] removedFollowers;
+            lock.writeLock().lock();
+            try {
+                removedFriends = friends.getOrDefault(userId, EMPTY);
+                removedFollowers = followers.getOrDefault(userId, EMPTY);
+                for (long friendId : removedFriends) {
+                    setEdge(userId, friendId, false);
+                }
+                for (long followerId : removedFollowers) {
+                    setEdge(followerId, userId, false);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (long friendId : removedFriends) {
+                notifyChanged(userId, friendId);
+            }
+            for (long followerId : removedFollowers) {
+                notifyChanged(followerId, userId);
+            }
+        });
+    }
+
+    private void notifyChanged(long userId, long friendId) {
+        listeners.forEach(listener -> listener.onFriendshipChanged(userId, friendId));
+    }
+
+    private void setEdge(long userId, long friendId, boolean present) {
+        if (present) {
+            link(friends, followers, userId, friendId);
+        } else {
+            unlink(friends, userId, friendId);
+            unlink(followers, friendId, userId);
+        }
+    }
+
+    private static void link(Map<Long, long[]> friends, Map<Long, long[]> followers, long userId, long friendId) {
+        friends.merge(userId, new long[]{friendId}, (ids, added) -> SortedArrays.insert(ids, friendId));
+        followers.merge(friendId, new long[]{userId}, (ids, added) -> SortedArrays.insert(ids, userId));
+    }
+
+    private static void unlink(Map<Long, long[]> adjacency, long userId, long otherId) {
+        adjacency.computeIfPresent(userId, (id, ids) -> {
+            long[] remaining = SortedArrays.remove(ids, otherId);
+            return remaining.length == 0 ? null : remaining;
+        });
+    }
+}
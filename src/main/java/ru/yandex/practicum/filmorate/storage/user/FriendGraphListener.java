@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+// Уведомление об изменении связи userId -> friendId в графе дружбы; вызывается после применения изменения
+public interface FriendGraphListener {
+    void onFriendshipChanged(long userId, long friendId);
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// «Возможно, вы знакомы»: друзья друзей по убыванию числа общих друзей. Обход в два шага по графу в памяти,
+// счетчики в LongIntHashMap; готовый список хранится до изменения дружбы, которое может на него повлиять
+@Component
+@RequiredArgsConstructor
+public class FriendSuggestions implements FriendGraphListener {
+    private final FriendGraph friendGraph;
+
+    private static final int ID_BITS = 40;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final int MAX_COUNT = (1 << 23) - 1;
+
+    @Value("${filmorate.friends.suggestions.size:50}")
+    private int size;
+    @Value("${filmorate.friends.suggestions.max-visited:100000}")
+    private int maxVisited;
+    @Value("${filmorate.friends.suggestions.cache-size:10000}")
+    private int cacheSize;
+
+    private Map<Long, long[]> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        friendGraph.addListener(this);
+    }
+
+    // Id предложенных пользователей, лучшие первыми, не больше size
+    public long[] suggest(long userId) {
+        long[] cached = cache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long[] computed = compute(userId);
+        cache.put(userId, computed);
+        return computed;
+    }
+
+    // Связь userId -> friendId меняет предложения для userId, для тех, у кого userId в друзьях,
+    // и для friendId, у которого меняются входящие заявки
+    @Override
+    public void onFriendshipChanged(long userId, long friendId) {
+        cache.remove(userId);
+        cache.remove(friendId);
+        for (long followerId : friendGraph.followerIds(userId)) {
+            cache.remove(followerId);
+        }
+    }
+
+    private long[] compute(long userId) {
+        long[] friends = friendGraph.friendIds(userId);
+        // Уже друзья и те, кто отправил заявку, в предложения не попадают
+        long[] followers = friendGraph.followerIds(userId);
+        if (friends.length == 0) {
+            return new long[0];
+        }
+        // Бюджет обхода делится поровну между друзьями, чтобы у пользователя с огромным списком друзей
+        // запрос оставался ограниченным, а учитывались все друзья, а не только первые
+        int perFriend = Math.max(1, maxVisited / friends.length);
+        LongIntHashMap mutual = new LongIntHashMap();
+        int visited = 0;
+        for (long friendId : friends) {
+            long[] candidates = friendGraph.friendIds(friendId);
+            int take = Math.min(candidates.length, perFriend);
+            for (int i = 0; i < take; i++) {
+                long candidate = candidates[i];
+                if (candidate != userId && !SortedArrays.contains(friends, candidate)
+                        && !SortedArrays.contains(followers, candidate)) {
+                    mutual.addTo(candidate, 1);
+                }
+            }
+            visited += take;
+            if (visited >= maxVisited) {
+                break;
+            }
+        }
+        return top(mutual);
+    }
+
+    // Больше общих друзей — выше; при равенстве меньший id первым
+    private long[] top(LongIntHashMap mutual) {
+        long[] ranked = new long[mutual.size()];
+        int[] index = {0};
+        mutual.forEach((candidate, count) -> ranked[index[0]++] = packRank(candidate, count));
+        Arrays.sort(ranked);
+        long[] result = new long[Math.min(size, ranked.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranked[i] & ID_MASK;
+        }
+        return result;
+    }
+
+    // Ключ сортировки в одном long: старшие 23 бита — инвертированное число общих друзей, младшие 40 — id
+    private static long packRank(long candidate, int count) {
+        return ((long) (MAX_COUNT - Math.min(count, MAX_COUNT)) << ID_BITS) | candidate;
+    }
+}
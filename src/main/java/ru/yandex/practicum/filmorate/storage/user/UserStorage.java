@@ -14,6 +14,8 @@ public interface UserStorage {
 
     List<User> getAllUsers();
 
+    List<User> getUsersPage(Long afterId, Integer limit);
+
     Boolean existById(Long userId);
 
     void addFriendById(Long userId, Long friendId);
@@ -22,5 +24,13 @@ public interface UserStorage {
 
     List<User> getAllFriends(Long userId);
 
+    List<User> getCommonFriends(Long userId, Long otherUserId);
+
+    List<User> getFriendSuggestions(Long userId, int limit);
+
+    List<User> getIncomingFriendRequests(Long userId, Long afterId, int limit);
+
+    List<User> getOutgoingFriendRequests(Long userId, Long afterId, int limit);
+
     void deleteUserById(Long userId);
 }
\ No newline at end of file
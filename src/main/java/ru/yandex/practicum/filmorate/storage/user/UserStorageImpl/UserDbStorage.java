@@ -7,16 +7,26 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.UserAddFriendException;
 import ru.yandex.practicum.filmorate.exception.UserDeleteFriendException;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityIds;
+import ru.yandex.practicum.filmorate.storage.RequestMemo;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.FriendSuggestions;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -24,47 +34,76 @@ import java.util.Optional;
 public class UserDbStorage implements UserStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<User> mapper;
+    private final EntityIds entityIds;
+    private final FriendGraph friendGraph;
+    private final FriendSuggestions friendSuggestions;
+
+    private static final int IDS_BATCH_SIZE = 500;
 
     private static final String FIND_ALL_QUERY = "SELECT * FROM users";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE user_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO users(email, login, name, birth_day) VALUES (?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE users SET email = ?, login = ?, name = ?, birth_day = ? WHERE user_id = ?";
-    private static final String EXIST_BY_ID_QUERY = "SELECT COUNT(*) > 0 FROM users WHERE user_id = ?";
-
-    private static final String ADD_FRIEND_QUERY = "INSERT INTO friends (user_id, friend_id, confirmed) VALUES (?, ?, FALSE)";
-    private static final String CONFIRM_FRIEND_QUERY = "UPDATE friends SET confirmed = TRUE WHERE user_id = ? AND friend_id = ? AND confirmed = FALSE";
-    private static final String DELETE_FRIEND_QUERY = "DELETE FROM friends WHERE user_id = ? AND friend_id = ? AND confirmed = FALSE";
-    private static final String UPDATE_FRIEND_STATUS_QUERY = """
-            UPDATE friends
-            SET
-                 confirmed = FALSE,
-                 user_id = friend_id,
-                 friend_id = user_id WHERE user_id = ? AND friend_id = ? AND confirmed = TRUE""";
-    private static final String GET_FRIENDS_QUERY = """
-            SELECT u.*
-            FROM users u
-            JOIN friends f ON u.user_id = f.friend_id OR u.user_id = f.user_id
-            WHERE (f.user_id = ? OR (f.friend_id = ? AND confirmed = TRUE))
-            AND u.user_id != ?
+
+    // Блокировка строки пользователя с меньшим id: переходы одной пары идут строго друг за другом.
+    // Каждая из двух строк пары меняется одним условным запросом, но условие зависит от другой строки:
+    // встречные заявки в параллельных транзакциях не видят друг друга, обе вставляют неподтвержденную
+    // строку, UPDATE обратной ни в одной не срабатывает, и взаимная дружба остается неподтвержденной.
+    // Так же заявка, параллельная удалению обратной строки, оставила бы confirmed = TRUE без пары
+    private static final String LOCK_PAIR_QUERY = "SELECT user_id FROM users WHERE user_id = ? FOR UPDATE";
+    private static final String ADD_FRIEND_QUERY = """
+            INSERT INTO friends (user_id, friend_id, confirmed)
+            SELECT ?, ?, EXISTS (SELECT 1 FROM friends WHERE user_id = ? AND friend_id = ?)
+            WHERE NOT EXISTS (SELECT 1 FROM friends WHERE user_id = ? AND friend_id = ?)
+            """;
+    private static final String DELETE_FRIEND_QUERY = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
+    private static final String SET_CONFIRMED_QUERY = "UPDATE friends SET confirmed = ? WHERE user_id = ? AND friend_id = ?";
+    private static final String CHECK_FRIEND_QUERY = "SELECT confirmed FROM friends WHERE user_id = ? AND friend_id = ?";
+    // Заявки, на которые пользователь еще не ответил: диапазон индекса (friend_id, confirmed, user_id)
+    private static final String GET_INCOMING_REQUESTS_QUERY = """
+            SELECT u.* FROM friends f
+            JOIN users u ON u.user_id = f.user_id
+            WHERE f.friend_id = ? AND f.confirmed = FALSE AND f.user_id > ?
+            ORDER BY f.user_id
+            LIMIT ?
+            """;
+    // Заявки пользователя без ответа: диапазон первичного ключа (user_id, friend_id)
+    private static final String GET_OUTGOING_REQUESTS_QUERY = """
+            SELECT u.* FROM friends f
+            JOIN users u ON u.user_id = f.friend_id
+            WHERE f.user_id = ? AND f.friend_id > ? AND f.confirmed = FALSE
+            ORDER BY f.friend_id
+            LIMIT ?
             """;
-    private static final String CHECK_FRIEND_QUERY = "SELECT confirmed FROM friends WHERE (user_id = ? AND friend_id = ?)";
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE user_id IN (%s)";
     private static final String DELETE_USER_QUERY = "DELETE FROM users WHERE user_id = ?";
 
     public List<User> getAllUsers() {
         return jdbc.query(FIND_ALL_QUERY, mapper);
     }
 
+    @Override
+    public List<User> getUsersPage(Long afterId, Integer limit) {
+        return jdbc.query(FIND_PAGE_QUERY, mapper, afterId == null ? 0L : afterId, limit);
+    }
+
     public Optional<User> find(Long userId) {
-        try {
-            return Optional.ofNullable(jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, userId));
-        } catch (EmptyResultDataAccessException ignored) {
+        if (!existById(userId)) {
             return Optional.empty();
         }
+        return RequestMemo.get("user:" + userId, () -> {
+            try {
+                return Optional.ofNullable(jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, userId));
+            } catch (EmptyResultDataAccessException ignored) {
+                return Optional.empty();
+            }
+        });
     }
 
     @Override
     public Boolean existById(Long userId) {
-        return Boolean.TRUE.equals(jdbc.queryForObject(EXIST_BY_ID_QUERY, Boolean.class, userId));
+        return entityIds.users().contains(userId);
     }
 
     public User save(User user) {
@@ -79,59 +118,91 @@ public class UserDbStorage implements UserStorage {
         }, keyHolder);
 
         user.setId(keyHolder.getKey().longValue());
+        entityIds.users().add(user.getId());
         return user;
     }
 
     public User update(User user) {
         jdbc.update(UPDATE_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        RequestMemo.evict("user:" + user.getId());
         return user;
     }
 
     @Override
+    @Transactional
     public void addFriendById(Long userId, Long friendId) {
-        Optional<Boolean> isFriend = isFriend(userId, friendId);  // Проверяем, есть ли дружба или запрос
-
-        if (isFriend.isEmpty()) {
-            jdbc.update(ADD_FRIEND_QUERY, userId, friendId);
-        } else if (isFriend.get().equals(Boolean.FALSE)) {
-            Optional<Boolean> isFriendBack = isFriend(friendId, userId);
-            if (isFriendBack.isEmpty() || isFriendBack.get().equals(Boolean.FALSE)) {
-                throw new UserAddFriendException("Вы уже отправили запрос другу id = " + friendId +
-                        ", дождитесь подтверждения с его стороны");
-            } else {
-                jdbc.update(CONFIRM_FRIEND_QUERY, friendId, userId);
+        lockPair(userId, friendId);
+        int added = jdbc.update(ADD_FRIEND_QUERY, userId, friendId, friendId, userId, userId, friendId);
+        if (added == 0) {
+            if (isFriend(userId, friendId).orElse(false)) {
+                throw new UserAddFriendException("Вы уже являетесь этим пользователем друзьями");
             }
-        } else {
-            throw new UserAddFriendException("Вы уже являетесь этим пользователем друзьями");
+            throw new UserAddFriendException("Вы уже отправили запрос другу id = " + friendId +
+                    ", дождитесь подтверждения с его стороны");
         }
+        // Встречная заявка уже была — теперь дружба подтверждена с обеих сторон
+        jdbc.update(SET_CONFIRMED_QUERY, true, friendId, userId);
+        friendGraph.refreshPair(userId, friendId);
     }
 
     @Override
+    @Transactional
     public void deleteFriendById(Long userId, Long friendId) {
-        Optional<Boolean> confirmedByUser = isFriend(userId, friendId);
-        Optional<Boolean> confirmedByFriend = isFriend(friendId, userId);
-        if (confirmedByUser.isEmpty() && confirmedByFriend.isEmpty()) {
+        lockPair(userId, friendId);
+        if (jdbc.update(DELETE_FRIEND_QUERY, userId, friendId) == 0) {
             throw new UserDeleteFriendException("Вы не являетесь другом с этим пользователем и" +
                     " не отправляли запросы на дружбу");
-        } else if (confirmedByUser.isPresent()) {
-            if (confirmedByUser.get().equals(Boolean.FALSE)) {
-                jdbc.update(DELETE_FRIEND_QUERY, userId, friendId);
-            } else {
-                jdbc.update(UPDATE_FRIEND_STATUS_QUERY, userId, friendId);
-            }
-        } else {
-            if (confirmedByFriend.get().equals(Boolean.FALSE)) {
-                throw new UserDeleteFriendException("Вы не являетесь другом с этим пользователем и" +
-                        " не отправляли запросы на дружбу");
-            } else {
-                jdbc.update(UPDATE_FRIEND_STATUS_QUERY, friendId, userId);
-            }
         }
+        // Связь друга с пользователем остается, но становится неподтвержденной заявкой
+        jdbc.update(SET_CONFIRMED_QUERY, false, friendId, userId);
+        friendGraph.refreshPair(userId, friendId);
+    }
+
+    private void lockPair(Long userId, Long friendId) {
+        jdbc.queryForList(LOCK_PAIR_QUERY, Long.class, Math.min(userId, friendId));
     }
 
     @Override
     public List<User> getAllFriends(Long userId) {
-        return jdbc.query(GET_FRIENDS_QUERY, mapper, userId, userId, userId);
+        return getUsersByIds(friendGraph.friendIds(userId));
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherUserId) {
+        return getUsersByIds(friendGraph.commonFriendIds(userId, otherUserId));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(Long userId, int limit) {
+        long[] suggested = friendSuggestions.suggest(userId);
+        return getUsersByIds(Arrays.copyOf(suggested, Math.min(limit, suggested.length)));
+    }
+
+    @Override
+    public List<User> getIncomingFriendRequests(Long userId, Long afterId, int limit) {
+        return jdbc.query(GET_INCOMING_REQUESTS_QUERY, mapper, userId, afterId == null ? 0L : afterId, limit);
+    }
+
+    @Override
+    public List<User> getOutgoingFriendRequests(Long userId, Long afterId, int limit) {
+        return jdbc.query(GET_OUTGOING_REQUESTS_QUERY, mapper, userId, afterId == null ? 0L : afterId, limit);
+    }
+
+    // Пользователи в порядке переданных id; из БД читаются только они
+    private List<User> getUsersByIds(long[] userIds) {
+        Map<Long, User> userById = new HashMap<>();
+        for (int from = 0; from < userIds.length; from += IDS_BATCH_SIZE) {
+            long[] batch = Arrays.copyOfRange(userIds, from, Math.min(from + IDS_BATCH_SIZE, userIds.length));
+            String inSql = Arrays.stream(batch)
+                    .mapToObj(id -> "?")
+                    .collect(Collectors.joining(", "));
+            jdbc.query(String.format(FIND_BY_IDS_QUERY, inSql), mapper, Arrays.stream(batch).boxed().toArray())
+                    .forEach(user -> userById.put(user.getId(), user));
+        }
+        return Arrays.stream(userIds)
+                .mapToObj(userById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     private Optional<Boolean> isFriend(Long userId, Long friendId) {
@@ -146,6 +217,9 @@ public class UserDbStorage implements UserStorage {
     public void deleteUserById(Long userId) {
         if (existById(userId)) {
             jdbc.update(DELETE_USER_QUERY, userId);
+            entityIds.users().remove(userId);
+            friendGraph.removeUser(userId);
+            RequestMemo.evict("user:" + userId);
             log.info("Пользователь с id = {} удален", userId);
         } else {
             throw new UserNotFoundException("Пользователь с id = " + userId + " не найден");
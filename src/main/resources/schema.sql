@@ -42,6 +42,10 @@ create table IF NOT EXISTS film_scope (
     PRIMARY KEY (user_id, film_id)
 );
 
+-- Счетчик лайков фильма, поддерживается при добавлении и удалении оценок
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count INT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC, film_id);
+
 -- Таблица жанров
 create table IF NOT EXISTS genre (
     genre_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -75,6 +79,17 @@ create table IF NOT EXISTS friends (
     confirmed BOOLEAN NOT NULL DEFAULT FALSE,
     PRIMARY KEY (user_id, friend_id)
 );
+-- Строка — направленная связь: friend_id в друзьях у user_id; confirmed — есть и обратная строка.
+-- Перенос старого формата, где подтвержденная дружба хранилась одной строкой: достраиваем обратные строки
+INSERT INTO friends (user_id, friend_id, confirmed)
+SELECT f.friend_id, f.user_id, TRUE FROM friends f
+WHERE f.confirmed = TRUE
+AND NOT EXISTS (SELECT 1 FROM friends r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id);
+UPDATE friends f SET confirmed = TRUE
+WHERE f.confirmed = FALSE
+AND EXISTS (SELECT 1 FROM friends r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id);
+-- Входящие заявки пользователя и обратные связи читаются диапазоном по этому индексу
+CREATE INDEX IF NOT EXISTS friends_incoming_idx ON friends (friend_id, confirmed, user_id);
 
 -- Таблица отзывов
 create table IF NOT EXISTS review(
@@ -93,6 +108,11 @@ create table IF NOT EXISTS review_score(
     PRIMARY KEY (review_id, user_id)
 );
 
+-- Полезность отзыва: сумма голосов (+1 / -1), обновляется вместе с review_score и сверяется при старте
+ALTER TABLE review ADD COLUMN IF NOT EXISTS useful INT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS review_film_useful_idx ON review (film_id, useful DESC, review_id);
+CREATE INDEX IF NOT EXISTS review_useful_idx ON review (useful DESC, review_id);
+
 -- Таблица режиссеров
 create table if not EXISTS  director (
     director_id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -114,4 +134,18 @@ create table  if not exists user_event(
      operation varchar(50),
      entity_id bigint,
  time_stamp timestamp Default CURRENT_TIMESTAMP
- );
\ No newline at end of file
+ );
+CREATE INDEX IF NOT EXISTS user_event_user_idx ON user_event (user_id, event_id);
+--Предрассчитанные рекомендации фильмов для пользователей
+create table if not exists user_recommendation(
+    user_id bigint REFERENCES users (user_id) ON DELETE CASCADE,
+    position INT NOT NULL,
+    film_id bigint REFERENCES films (film_id) ON DELETE CASCADE,
+    PRIMARY KEY (user_id, position)
+);
+
+--Время последнего расчета рекомендаций пользователя
+create table if not exists user_recommendation_state(
+    user_id bigint PRIMARY KEY REFERENCES users (user_id) ON DELETE CASCADE,
+    computed_at timestamp NOT NULL
+);
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DirectorFilmsIndexTest {
+    private static final long DIRECTOR_ID = 7;
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final LikeBitmapIndex likes = new LikeBitmapIndex(jdbc);
+    private final DirectorFilmsIndex index = new DirectorFilmsIndex(jdbc, likes);
+    private Runnable duringLoad = () -> {
+    };
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(call -> {
+            duringLoad.run();
+            RowCallbackHandler handler = call.getArgument(1);
+            handler.processRow(film(1, 1990));
+            handler.processRow(film(2, 2010));
+            return null;
+        }).when(jdbc).query(contains("FROM films"), any(RowCallbackHandler.class));
+        doAnswer(call -> {
+            RowCallbackHandler handler = call.getArgument(1);
+            handler.processRow(link(1));
+            handler.processRow(link(2));
+            return null;
+        }).when(jdbc).query(contains("FROM director_film"), any(RowCallbackHandler.class));
+        like(2, 1);
+        index.rebuild();
+    }
+
+    @Test
+    void rebuildOrdersByYearAndByBitmapLikes() {
+        assertThat(index.getFilmsSortedByYear(DIRECTOR_ID)).containsExactly(1L, 2L);
+        assertThat(index.getFilmsSortedByLikes(DIRECTOR_ID)).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void likesDuringLoadAreNotCountedTwice() {
+        // Фильм 1 получает два лайка, фильм 2 теряет свой, пока пересборка читает БД
+        duringLoad = () -> {
+            like(1, 2);
+            like(1, 3);
+            unlike(2, 1);
+        };
+
+        index.rebuild();
+        assertThat(index.getFilmsSortedByLikes(DIRECTOR_ID)).containsExactly(1L, 2L);
+
+        // При двойном учете у фильма 1 было бы 4 лайка и он остался бы первым
+        like(2, 4);
+        like(2, 5);
+        like(2, 6);
+        assertThat(index.getFilmsSortedByLikes(DIRECTOR_ID)).containsExactly(2L, 1L);
+    }
+
+    private void like(long filmId, long userId) {
+        likes.onLikeAdded(filmId, userId);
+        index.onLikeAdded(filmId, userId);
+    }
+
+    private void unlike(long filmId, long userId) {
+        likes.onLikeRemoved(filmId, userId);
+        index.onLikeRemoved(filmId, userId);
+    }
+
+    private static ResultSet film(long filmId, int year) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("film_id")).thenReturn(filmId);
+        when(rs.getDate("release_date")).thenReturn(Date.valueOf(LocalDate.of(year, 1, 1)));
+        return rs;
+    }
+
+    private static ResultSet link(long filmId) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("director_id")).thenReturn(DIRECTOR_ID);
+        when(rs.getLong("film_id")).thenReturn(filmId);
+        return rs;
+    }
+}
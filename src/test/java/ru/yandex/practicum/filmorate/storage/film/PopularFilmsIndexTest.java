@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PopularFilmsIndexTest {
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final LikeBitmapIndex likes = new LikeBitmapIndex(jdbc);
+    private final PopularFilmsIndex index = new PopularFilmsIndex(jdbc, likes);
+    private Runnable duringLoad = () -> {
+    };
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(call -> {
+            duringLoad.run();
+            RowCallbackHandler handler = call.getArgument(1);
+            handler.processRow(film(1));
+            handler.processRow(film(2));
+            return null;
+        }).when(jdbc).query(contains("FROM films"), any(RowCallbackHandler.class));
+        like(1, 1);
+        like(2, 1);
+        like(2, 2);
+        index.rebuild();
+    }
+
+    @Test
+    void rebuildTakesLikesFromBitmapIndex() {
+        assertThat(index.getTop(10, null, null)).containsExactly(2L, 1L);
+        assertThat(index.getLikes(1L)).isEqualTo(1);
+        assertThat(index.getLikes(2L)).isEqualTo(2);
+    }
+
+    @Test
+    void likesDuringLoadAreNotCountedTwice() {
+        // Лайки коммитятся и доходят до индекса, пока пересборка читает БД
+        duringLoad = () -> {
+            like(1, 3);
+            like(1, 4);
+            unlike(2, 1);
+        };
+
+        index.rebuild();
+
+        assertThat(index.getLikes(1L)).isEqualTo(3);
+        assertThat(index.getLikes(2L)).isEqualTo(1);
+        assertThat(index.getTop(10, null, null)).containsExactly(1L, 2L);
+        assertThat(index.getTop(10, null, 2000)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void likesAfterRebuildUpdateRanks() {
+        like(1, 5);
+        like(1, 6);
+
+        assertThat(index.getLikes(1L)).isEqualTo(3);
+        assertThat(index.getTop(1, null, null)).containsExactly(1L);
+    }
+
+    private void like(long filmId, long userId) {
+        likes.onLikeAdded(filmId, userId);
+        index.onLikeAdded(filmId, userId);
+    }
+
+    private void unlike(long filmId, long userId) {
+        likes.onLikeRemoved(filmId, userId);
+        index.onLikeRemoved(filmId, userId);
+    }
+
+    private static ResultSet film(long filmId) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("film_id")).thenReturn(filmId);
+        when(rs.getInt("release_year")).thenReturn(2000);
+        return rs;
+    }
+}
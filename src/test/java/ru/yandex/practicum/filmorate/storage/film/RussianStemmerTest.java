@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Ожидаемые основы выписаны по шагам алгоритма Snowball для русского языка
+class RussianStemmerTest {
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({
+            // Деепричастия совершенного вида: группа 1 после а/я, группа 2 целиком
+            "прочитав, прочита",
+            "прочитавшись, прочита",
+            "закрывшись, закр",
+            // Возвратные окончания
+            "поднялся, подня",
+            "одевшись, одевш",
+            // Прилагательные и причастия
+            "красивая, красив",
+            "читающий, чита",
+            "прочитанный, прочита",
+            "организующий, организ",
+            // Превосходная степень
+            "важнейшие, важн",
+            "длиннейший, длин",
+            // Двойное н и мягкий знак
+            "старинный, старин",
+            "статьи, стат",
+            "семьи, сем",
+            // Глаголы, существительные, словообразовательные суффиксы в R2
+            "читаете, чита",
+            "говорила, говор",
+            "книгами, книг",
+            "активность, активн",
+            // Без гласных и слишком короткие слова не меняются
+            "в, в",
+            "мгм, мгм",
+            "я, я"
+    })
+    void stemsLikeSnowball(String word, String expected) {
+        assertThat(RussianStemmer.stem(word)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.dto.Suggestion;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SuggestIndexTest {
+    private static final Map<Long, Long> LIKES = Map.of(1L, 5L, 2L, 9L, 3L, 1L, 4L, 7L, 5L, 0L);
+
+    private final PopularFilmsIndex popularFilmsIndex = mock(PopularFilmsIndex.class);
+    private final SuggestIndex index = new SuggestIndex(mock(JdbcTemplate.class), popularFilmsIndex);
+
+    @BeforeEach
+    void setUp() {
+        when(popularFilmsIndex.getLikes(anyLong())).thenAnswer(call -> LIKES.get(call.<Long>getArgument(0)));
+        when(popularFilmsIndex.getRankedFilmIds()).thenReturn(List.of(2L, 4L, 1L, 3L, 5L));
+        film(1, "Зеркало");
+        film(2, "Звездные войны");
+        film(3, "Андрей Рублев");
+        film(4, "Звонок");
+        film(5, "Война и мир");
+        director(1, "Тарковский, Андрей");
+        director(2, "Звягинцев, Андрей");
+        director(3, "Андерсон, Уэс");
+    }
+
+    // Обход по рейтингу при малом scanLimit должен совпадать с ранжированием всего диапазона
+    @ParameterizedTest
+    @ValueSource(ints = {1, 1000})
+    void suggestsFilmsByAnyWordPrefixOrderedByLikes(int scanLimit) {
+        ReflectionTestUtils.setField(index, "scanLimit", scanLimit);
+
+        assertThat(ids(index.suggestFilms("з", 10))).containsExactly(2L, 4L, 1L);
+        assertThat(ids(index.suggestFilms("з", 2))).containsExactly(2L, 4L);
+        assertThat(ids(index.suggestFilms("Вой", 10))).containsExactly(2L, 5L);
+        assertThat(ids(index.suggestFilms("звездные в", 10))).containsExactly(2L);
+        assertThat(ids(index.suggestFilms("андрей р", 10))).containsExactly(3L);
+        assertThat(ids(index.suggestFilms("рублев з", 10))).isEmpty();
+        assertThat(index.suggestFilms("  ", 10)).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 1000})
+    void suggestsDirectorsOrderedByName(int scanLimit) {
+        ReflectionTestUtils.setField(index, "scanLimit", scanLimit);
+
+        assertThat(ids(index.suggestDirectors("андр", 10))).containsExactly(2L, 1L);
+        assertThat(ids(index.suggestDirectors("ан", 2))).containsExactly(3L, 2L);
+        assertThat(ids(index.suggestDirectors("тарковский ан", 10))).containsExactly(1L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 1000})
+    void renamedAndDeletedEntriesAreNotSuggested(int scanLimit) {
+        ReflectionTestUtils.setField(index, "scanLimit", scanLimit);
+
+        film(4, "Сталкер");
+        index.onFilmDeleted(1L);
+        index.onDirectorDeleted(2L);
+
+        assertThat(ids(index.suggestFilms("з", 10))).containsExactly(2L);
+        assertThat(ids(index.suggestFilms("стал", 10))).containsExactly(4L);
+        assertThat(ids(index.suggestDirectors("андр", 10))).containsExactly(1L);
+    }
+
+    private void film(long id, String title) {
+        index.onFilmSaved(Film.builder().id(id).title(title).build());
+    }
+
+    private void director(long id, String name) {
+        index.onDirectorSaved(new Director(id, name));
+    }
+
+    private static List<Long> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getId).toList();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FriendSuggestionsTest {
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<Long, TreeSet<Long>> friends = new HashMap<>();
+    private final Map<Long, TreeSet<Long>> followers = new HashMap<>();
+    private FriendSuggestions suggestions;
+
+    @BeforeEach
+    void setUp() {
+        suggestions = newSuggestions();
+    }
+
+    @Test
+    void moreMutualFriendsFirstThenSmallerId() {
+        // У 1 друзья 10, 11, 12; 30 — общий у всех троих, 20 и 21 — у двоих, 40 — у одного
+        link(1, 10, 11, 12);
+        link(10, 30, 21, 40);
+        link(11, 30, 20, 21);
+        link(12, 30, 20);
+
+        assertThat(suggestions.suggest(1)).containsExactly(30, 20, 21, 40);
+    }
+
+    @Test
+    void friendsAndIncomingRequestsAreNotSuggested() {
+        link(1, 10, 11);
+        link(10, 1, 11, 50, 60);
+        link(60, 1);
+
+        assertThat(suggestions.suggest(1)).containsExactly(50);
+    }
+
+    @Test
+    void largeIdsKeepTheirOrder() {
+        long big = (1L << 40) - 1;
+        link(1, 10, 11);
+        link(10, big, big - 1, 5);
+        link(11, big);
+
+        assertThat(suggestions.suggest(1)).containsExactly(big, 5, big - 1);
+    }
+
+    @Test
+    void randomGraphsMatchBruteForceRanking() {
+        Random random = new Random(17);
+        for (int round = 0; round < 50; round++) {
+            friends.clear();
+            followers.clear();
+            for (int edge = 0; edge < 3_000; edge++) {
+                long userId = random.nextInt(200);
+                long friendId = random.nextInt(200);
+                if (userId != friendId) {
+                    link(userId, friendId);
+                }
+            }
+            suggestions = newSuggestions();
+            long userId = random.nextInt(200);
+
+            assertThat(suggestions.suggest(userId)).containsExactly(bruteForce(userId, 50));
+        }
+    }
+
+    @Test
+    void cachedSuggestionsAreDroppedWhenFriendshipChanges() {
+        link(1, 10);
+        link(10, 20);
+        assertThat(suggestions.suggest(1)).containsExactly(20);
+
+        link(10, 30);
+        assertThat(suggestions.suggest(1)).containsExactly(20);
+
+        suggestions.onFriendshipChanged(10, 30);
+        assertThat(suggestions.suggest(1)).containsExactly(20, 30);
+    }
+
+    private FriendSuggestions newSuggestions() {
+        FriendGraph graph = mock(FriendGraph.class);
+        when(graph.friendIds(anyLong())).thenAnswer(call -> ids(friends, call.getArgument(0)));
+        when(graph.followerIds(anyLong())).thenAnswer(call -> ids(followers, call.getArgument(0)));
+        FriendSuggestions created = new FriendSuggestions(graph);
+        ReflectionTestUtils.setField(created, "size", 50);
+        ReflectionTestUtils.setField(created, "maxVisited", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(created, "cacheSize", 100);
+        created.init();
+        return created;
+    }
+
+    private long[] bruteForce(long userId, int size) {
+        TreeSet<Long> own = friends.getOrDefault(userId, new TreeSet<>());
+        TreeSet<Long> incoming = followers.getOrDefault(userId, new TreeSet<>());
+        Map<Long, Integer> mutual = new HashMap<>();
+        for (long friendId : own) {
+            for (long candidate : friends.getOrDefault(friendId, new TreeSet<>())) {
+                if (candidate != userId && !own.contains(candidate) && !incoming.contains(candidate)) {
+                    mutual.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+        return mutual.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(size)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+    }
+
+    private void link(long userId, long... friendIds) {
+        for (long friendId : friendIds) {
+            friends.computeIfAbsent(userId, id -> new TreeSet<>()).add(friendId);
+            followers.computeIfAbsent(friendId, id -> new TreeSet<>()).add(userId);
+        }
+    }
+
+    private static long[] ids(Map<Long, TreeSet<Long>> adjacency, long userId) {
+        TreeSet<Long> ids = adjacency.get(userId);
+        return ids == null ? EMPTY : ids.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongIntHashMapTest {
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> reference = new HashMap<>();
+        // Узкий диапазон ключей дает длинные цепочки и частые удаления из их середины
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(512) - 256;
+            int value = random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    map.put(key, value);
+                    reference.put(key, value);
+                }
+                case 1 -> assertThat(map.addTo(key, value)).isEqualTo(reference.merge(key, value, Integer::sum));
+                case 2 -> assertThat(map.remove(key)).isEqualTo(reference.remove(key) != null);
+                default -> {
+                    assertThat(map.containsKey(key)).isEqualTo(reference.containsKey(key));
+                    assertThat(map.get(key, -1)).isEqualTo(reference.getOrDefault(key, -1));
+                }
+            }
+            assertThat(map.size()).isEqualTo(reference.size());
+        }
+        assertThat(contentOf(map)).isEqualTo(reference);
+    }
+
+    @Test
+    void keysStayReachableAfterBackwardShiftDelete() {
+        LongIntHashMap map = new LongIntHashMap(1024);
+        Map<Long, Integer> reference = new HashMap<>();
+        for (long key = 0; key < 500; key++) {
+            map.put(key, (int) key);
+            reference.put(key, (int) key);
+        }
+        // Удаление каждого третьего ключа сдвигает хвосты цепочек на освободившиеся места
+        for (long key = 0; key < 500; key += 3) {
+            assertThat(map.remove(key)).isTrue();
+            reference.remove(key);
+        }
+        for (long key = 0; key < 500; key++) {
+            assertThat(map.get(key, -1)).isEqualTo(reference.getOrDefault(key, -1));
+        }
+        assertThat(map.remove(0)).isFalse();
+        assertThat(contentOf(map)).isEqualTo(reference);
+    }
+
+    @Test
+    void clearRemovesAllKeys() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (long key = 0; key < 100; key++) {
+            map.addTo(key, 1);
+        }
+        map.clear();
+
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.containsKey(5)).isFalse();
+        assertThat(contentOf(map)).isEmpty();
+    }
+
+    @Test
+    void reservedKeyIsRejected() {
+        LongIntHashMap map = new LongIntHashMap();
+
+        assertThatThrownBy(() -> map.put(Long.MIN_VALUE, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> map.addTo(Long.MIN_VALUE, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Map<Long, Integer> contentOf(LongIntHashMap map) {
+        Map<Long, Integer> content = new HashMap<>();
+        map.forEach(content::put);
+        return content;
+    }
+}
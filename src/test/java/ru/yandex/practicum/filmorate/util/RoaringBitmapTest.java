@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoaringBitmapTest {
+    private static final int ARRAY_MAX = 4096;
+
+    @Test
+    void containerSwitchesToBitmapAndBackAtThreshold() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> reference = new TreeSet<>();
+        // Через одно значение, чтобы массив и битовая карта отличались по содержимому слов
+        for (long value = 0; value < 2L * (ARRAY_MAX + 1); value += 2) {
+            assertThat(bitmap.add(value)).isTrue();
+            reference.add(value);
+        }
+        assertThat(bitmap.add(0)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(ARRAY_MAX + 1);
+        assertContent(bitmap, reference);
+
+        // Снова ровно ARRAY_MAX значений — контейнер возвращается к массиву
+        assertThat(bitmap.remove(2)).isTrue();
+        reference.remove(2L);
+        assertThat(bitmap.remove(2)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(ARRAY_MAX);
+        assertContent(bitmap, reference);
+
+        assertThat(bitmap.add(2)).isTrue();
+        assertThat(bitmap.add(3)).isTrue();
+        reference.add(2L);
+        reference.add(3L);
+        assertContent(bitmap, reference);
+    }
+
+    @Test
+    void randomOperationsMatchTreeSet() {
+        Random random = new Random(7);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Long> reference = new TreeSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Три контейнера, один из них проходит порог в обе стороны
+            long value = ((long) random.nextInt(3) << 16) | random.nextInt(ARRAY_MAX * 3);
+            if (random.nextInt(3) == 0) {
+                assertThat(bitmap.remove(value)).isEqualTo(reference.remove(value));
+            } else {
+                assertThat(bitmap.add(value)).isEqualTo(reference.add(value));
+            }
+            assertThat(bitmap.contains(value)).isEqualTo(reference.contains(value));
+        }
+        assertContent(bitmap, reference);
+    }
+
+    @Test
+    void andMatchesSetIntersection() {
+        Random random = new Random(11);
+        for (int density : new int[]{100, ARRAY_MAX - 1, ARRAY_MAX + 1, 30_000}) {
+            for (int otherDensity : new int[]{100, ARRAY_MAX + 1, 30_000}) {
+                TreeSet<Long> first = randomSet(random, density);
+                TreeSet<Long> second = randomSet(random, otherDensity);
+                TreeSet<Long> expected = new TreeSet<>(first);
+                expected.retainAll(second);
+
+                RoaringBitmap result = bitmapOf(first).and(bitmapOf(second));
+
+                assertContent(result, expected);
+            }
+        }
+    }
+
+    @Test
+    void emptyBitmap() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+
+        assertThat(bitmap.isEmpty()).isTrue();
+        assertThat(bitmap.cardinality()).isZero();
+        assertThat(bitmap.remove(1)).isFalse();
+        assertThat(bitmap.and(bitmapOf(new TreeSet<>(List.of(1L, 2L)))).isEmpty()).isTrue();
+
+        bitmap.add(5);
+        bitmap.remove(5);
+        assertThat(bitmap.isEmpty()).isTrue();
+    }
+
+    // Значения в двух соседних контейнерах, чтобы пересекались и совпадающие, и несовпадающие ключи
+    private static TreeSet<Long> randomSet(Random random, int count) {
+        TreeSet<Long> values = new TreeSet<>();
+        long base = random.nextInt(2) << 16;
+        while (values.size() < count) {
+            values.add(base + random.nextInt(1 << 17));
+        }
+        return values;
+    }
+
+    private static RoaringBitmap bitmapOf(TreeSet<Long> values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        values.forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static void assertContent(RoaringBitmap bitmap, TreeSet<Long> reference) {
+        assertThat(bitmap.cardinality()).isEqualTo(reference.size());
+        assertThat(bitmap.isEmpty()).isEqualTo(reference.isEmpty());
+        assertThat(bitmap.toArray()).containsExactly(reference.stream().mapToLong(Long::longValue).toArray());
+    }
+}
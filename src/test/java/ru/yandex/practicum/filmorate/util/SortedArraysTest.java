@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SortedArraysTest {
+
+    @Test
+    void insertAndRemoveMatchTreeSet() {
+        Random random = new Random(3);
+        long[] longs = new long[0];
+        int[] ints = new int[0];
+        TreeSet<Long> reference = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(400) - 200;
+            if (random.nextBoolean()) {
+                longs = SortedArrays.insert(longs, value);
+                ints = SortedArrays.insert(ints, value);
+                reference.add((long) value);
+            } else {
+                longs = SortedArrays.remove(longs, value);
+                ints = SortedArrays.remove(ints, value);
+                reference.remove((long) value);
+            }
+            assertThat(SortedArrays.contains(longs, value)).isEqualTo(reference.contains((long) value));
+        }
+        assertThat(longs).containsExactly(toArray(reference));
+        assertThat(ints).containsExactly(reference.stream().mapToInt(Long::intValue).toArray());
+    }
+
+    @Test
+    void unchangedArrayIsReturnedAsIs() {
+        long[] array = {1, 3, 5};
+
+        assertThat(SortedArrays.insert(array, 3)).isSameAs(array);
+        assertThat(SortedArrays.remove(array, 4)).isSameAs(array);
+        assertThat(SortedArrays.insert(array, 0)).containsExactly(0, 1, 3, 5);
+        assertThat(SortedArrays.insert(array, 6)).containsExactly(1, 3, 5, 6);
+        assertThat(array).containsExactly(1, 3, 5);
+    }
+
+    @Test
+    void intersectMatchesTreeSet() {
+        Random random = new Random(5);
+        for (int i = 0; i < 1_000; i++) {
+            TreeSet<Long> first = randomSet(random);
+            TreeSet<Long> second = randomSet(random);
+            TreeSet<Long> expected = new TreeSet<>(first);
+            expected.retainAll(second);
+
+            long[] common = SortedArrays.intersect(toArray(first), toArray(second));
+
+            assertThat(common).containsExactly(toArray(expected));
+            assertThat(SortedArrays.intersectionSize(toArray(first), toArray(second))).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    void intersectEdgeCases() {
+        long[] empty = new long[0];
+        long[] values = {1, 2, 3};
+
+        assertThat(SortedArrays.intersect(empty, values)).isEmpty();
+        assertThat(SortedArrays.intersect(values, empty)).isEmpty();
+        assertThat(SortedArrays.intersect(values, new long[]{1, 2, 3})).containsExactly(1, 2, 3);
+        assertThat(SortedArrays.intersect(values, new long[]{4, 5})).isEmpty();
+        assertThat(SortedArrays.intersectionSize(new long[]{-5, 0, 7}, new long[]{-5, 7, 9})).isEqualTo(2);
+    }
+
+    private static TreeSet<Long> randomSet(Random random) {
+        TreeSet<Long> values = new TreeSet<>();
+        int size = random.nextInt(50);
+        while (values.size() < size) {
+            values.add((long) random.nextInt(100));
+        }
+        return values;
+    }
+
+    private static long[] toArray(TreeSet<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+}